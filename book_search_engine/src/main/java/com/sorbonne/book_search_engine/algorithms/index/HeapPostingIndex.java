@@ -0,0 +1,19 @@
+package com.sorbonne.book_search_engine.algorithms.index;
+
+/**
+ * {@link PostingIndex} holding all the decoded posting lists of an index file in memory.
+ */
+public class HeapPostingIndex extends SortedTermIndex {
+    private final Postings[] postings;
+
+    public HeapPostingIndex(IndexFile indexFile) {
+        super(indexFile.getAliases().length > 0 ? indexFile.getAliases() : indexFile.getTerms(),
+                indexFile.getAliases().length > 0 ? indexFile.getAliasTargets() : null);
+        this.postings = indexFile.getPostings();
+    }
+
+    @Override
+    Postings getPostingsAt(int rank) {
+        return postings[rank];
+    }
+}
@@ -0,0 +1,445 @@
+package com.sorbonne.book_search_engine.algorithms.index;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.zip.CRC32;
+
+/**
+ * Binary format of an index table (term -> posting list), replacing the java serialization of HashMaps.
+ * <pre>
+ * header (40 bytes, big endian)
+ *   int   magic "BSEI"
+ *   short version
+ *   short flags                WEIGHTED: postings have relevances, ALIASES: the file has an alias block
+ *   int   number of terms
+ *   int   number of aliases
+ *   int   length of the term block
+ *   int   length of the alias block
+ *   long  length of the posting block
+ *   int   CRC32 of the 32 bytes of the header before it, and of the term and alias blocks
+ *   int   CRC32 of the posting block
+ * term block, terms in ascending order, front coded on their UTF-8 bytes
+ *   varint length of the prefix shared with the previous term, varint length of the suffix, suffix,
+ *   varint length of the posting list of the term in the posting block
+ * alias block, aliases in ascending order (the words of a stem), front coded like the terms
+ *   varint length of the shared prefix, varint length of the suffix, suffix, varint ordinal of the term
+ * posting block, one posting list per term, in the order of the terms
+ *   varint number of books
+ *   if WEIGHTED: float maximal relevance, then the books by decreasing relevance (ties in ascending order of ids),
+ *     each one as a varint id and an unsigned short relevance / max * 65535
+ *   varint ids in ascending order, as gaps from the previous id
+ * The books of a weighted posting list come first by relevance, so the most relevant ones are read
+ * without decoding the rest of the list.
+ * </pre>
+ * The counts and lengths of the header are checked against the size of the file before the CRCs,
+ * so a corrupted file is an IOException, never an array or buffer exception.
+ */
+public final class IndexFile {
+    static final int MAGIC = 0x42534549;
+    static final short VERSION = 3;
+    static final int HEADER_SIZE = 40;
+    static final int WEIGHTED = 1;
+    static final int ALIASES = 2;
+    private static final int QUANTIZATION_LEVELS = 65535;
+
+    private final String[] terms;
+    private final Postings[] postings;
+    private final String[] aliases;
+    private final int[] aliasTargets;
+
+    private IndexFile(String[] terms, Postings[] postings, String[] aliases, int[] aliasTargets) {
+        this.terms = terms;
+        this.postings = postings;
+        this.aliases = aliases;
+        this.aliasTargets = aliasTargets;
+    }
+
+    /**
+     * @return the terms in ascending order
+     */
+    public String[] getTerms() {
+        return terms;
+    }
+
+    /**
+     * @return the posting lists, in the order of the terms
+     */
+    public Postings[] getPostings() {
+        return postings;
+    }
+
+    /**
+     * @return the aliases in ascending order, empty if the file has no alias block
+     */
+    public String[] getAliases() {
+        return aliases;
+    }
+
+    /**
+     * @return for each alias, the ordinal of its term
+     */
+    public int[] getAliasTargets() {
+        return aliasTargets;
+    }
+
+    /**
+     * write an index table to a file
+     * @param file the destination
+     * @param index map of (term, posting list), all the posting lists weighted or none of them
+     * @param aliases map of (alias, term), or null
+     * @throws IOException when error while writing to the file occurs
+     */
+    public static void write(File file, SortedMap<String, Postings> index, SortedMap<String, String> aliases) throws IOException {
+        boolean weighted = !index.isEmpty() && index.values().iterator().next().isWeighted();
+        String[] terms = index.keySet().toArray(new String[0]);
+
+        ByteArrayOutputStream postingBlock = new ByteArrayOutputStream();
+        ByteArrayOutputStream termBlock = new ByteArrayOutputStream();
+        byte[] previous = new byte[0];
+        for (Map.Entry<String, Postings> entry : index.entrySet()) {
+            Postings list = entry.getValue();
+            if (list.isWeighted() != weighted)
+                throw new IllegalArgumentException("posting lists of '" + entry.getKey() + "' is not as weighted as the others");
+            int before = postingBlock.size();
+            writePostings(postingBlock, list);
+            previous = writeTerm(termBlock, entry.getKey(), previous);
+            writeVarInt(termBlock, postingBlock.size() - before);
+        }
+
+        ByteArrayOutputStream aliasBlock = new ByteArrayOutputStream();
+        int aliasCount = 0;
+        if (aliases != null) {
+            previous = new byte[0];
+            for (Map.Entry<String, String> entry : aliases.entrySet()) {
+                int ordinal = Arrays.binarySearch(terms, entry.getValue());
+                if (ordinal < 0)
+                    throw new IllegalArgumentException("alias '" + entry.getKey() + "' of an unknown term: " + entry.getValue());
+                previous = writeTerm(aliasBlock, entry.getKey(), previous);
+                writeVarInt(aliasBlock, ordinal);
+                aliasCount++;
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) ((weighted ? WEIGHTED : 0) | (aliases != null ? ALIASES : 0)));
+        header.putInt(terms.length);
+        header.putInt(aliasCount);
+        header.putInt(termBlock.size());
+        header.putInt(aliasBlock.size());
+        header.putLong(postingBlock.size());
+        CRC32 dictionaryCrc = new CRC32();
+        dictionaryCrc.update(header.array(), 0, header.position());
+        dictionaryCrc.update(termBlock.toByteArray());
+        dictionaryCrc.update(aliasBlock.toByteArray());
+        CRC32 postingCrc = new CRC32();
+        postingCrc.update(postingBlock.toByteArray());
+        header.putInt((int) dictionaryCrc.getValue());
+        header.putInt((int) postingCrc.getValue());
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            out.write(header.array());
+            termBlock.writeTo(out);
+            aliasBlock.writeTo(out);
+            postingBlock.writeTo(out);
+        }
+    }
+
+    /**
+     * read a whole index table from a file into memory
+     * @param file an index file written by {@link #write}
+     * @return the content of the file
+     * @throws IOException when the file can't be read, or is not a valid index file
+     */
+    public static IndexFile read(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        Header header = Header.read(buffer, file);
+        header.checkPostings(buffer, file);
+        Dictionary dictionary = Dictionary.read(buffer, header, file);
+
+        Postings[] postings = new Postings[header.termCount];
+        for (int i = 0; i < header.termCount; i++) {
+            postings[i] = readPostings(buffer, header.postingBlockStart() + dictionary.offsets[i], header.isWeighted());
+        }
+        return new IndexFile(dictionary.terms, postings, dictionary.aliases, dictionary.aliasTargets);
+    }
+
+    private static void writePostings(ByteArrayOutputStream out, Postings postings) {
+        writeVarInt(out, postings.size());
+        if (postings.isWeighted()) {
+            float max = 0;
+            for (int i = 0; i < postings.size(); i++) {
+                max = Math.max(max, postings.getRelevance(i));
+            }
+            int bits = Float.floatToIntBits(max);
+            out.write(bits >>> 24);
+            out.write(bits >>> 16);
+            out.write(bits >>> 8);
+            out.write(bits);
+            // ordered on the quantized relevances, the ones read back
+            float[] quantized = new float[postings.size()];
+            for (int i = 0; i < postings.size(); i++) {
+                quantized[i] = max == 0 ? 0 : Math.round(postings.getRelevance(i) / max * QUANTIZATION_LEVELS);
+            }
+            for (int i: Postings.relevanceOrder(quantized)) {
+                writeVarInt(out, postings.getId(i));
+                out.write((int) quantized[i] >>> 8);
+                out.write((int) quantized[i]);
+            }
+        }
+        int previousId = 0;
+        for (int i = 0; i < postings.size(); i++) {
+            int id = postings.getId(i);
+            if (i > 0 && id <= previousId)
+                throw new IllegalArgumentException("ids of a posting list must be in ascending order");
+            writeVarInt(out, id - previousId);
+            previousId = id;
+        }
+    }
+
+    /**
+     * decode the posting list starting at an absolute position of the buffer
+     */
+    static Postings readPostings(ByteBuffer buffer, int position, boolean weighted) {
+        ByteBuffer in = at(buffer, position);
+        int size = readVarInt(in);
+        if (!weighted)
+            return new Postings(readIds(in, size), null);
+
+        float scale = in.getFloat() / QUANTIZATION_LEVELS;
+        int[] idsByRelevance = new int[size];
+        float[] relevancesByRank = new float[size];
+        for (int rank = 0; rank < size; rank++) {
+            idsByRelevance[rank] = readVarInt(in);
+            relevancesByRank[rank] = (in.getShort() & 0xFFFF) * scale;
+        }
+        int[] ids = readIds(in, size);
+        float[] relevances = new float[size];
+        int[] byRelevance = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            int i = Arrays.binarySearch(ids, idsByRelevance[rank]);
+            relevances[i] = relevancesByRank[rank];
+            byRelevance[rank] = i;
+        }
+        return new Postings(ids, relevances, byRelevance);
+    }
+
+    /**
+     * decode only the most relevant books of the posting list starting at an absolute position of the buffer
+     * @return the ids of at most limit books, by decreasing relevance (in ascending order if not weighted)
+     */
+    static int[] readIdsByRelevance(ByteBuffer buffer, int position, boolean weighted, int limit) {
+        ByteBuffer in = at(buffer, position);
+        int size = readVarInt(in);
+        int[] ids = new int[Math.min(limit, size)];
+        if (!weighted)
+            return readIds(in, ids.length);
+        in.getFloat();
+        for (int rank = 0; rank < ids.length; rank++) {
+            ids[rank] = readVarInt(in);
+            in.getShort();
+        }
+        return ids;
+    }
+
+    private static int[] readIds(ByteBuffer in, int size) {
+        int[] ids = new int[size];
+        int id = 0;
+        for (int i = 0; i < size; i++) {
+            id += readVarInt(in);
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    private static byte[] writeTerm(ByteArrayOutputStream out, String term, byte[] previous) {
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        int shared = 0;
+        int max = Math.min(bytes.length, previous.length);
+        while (shared < max && bytes[shared] == previous[shared])
+            shared++;
+        writeVarInt(out, shared);
+        writeVarInt(out, bytes.length - shared);
+        out.write(bytes, shared, bytes.length - shared);
+        return bytes;
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        int b = in.get();
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    /**
+     * @return a view of the buffer positioned at an absolute position, the buffer itself is left untouched
+     */
+    static ByteBuffer at(ByteBuffer buffer, int position) {
+        ByteBuffer view = buffer.duplicate();
+        // cast for the java 8 signature of Buffer.position(int)
+        ((Buffer) view).position(position);
+        return view;
+    }
+
+    /**
+     * the fixed size header of an index file
+     */
+    static final class Header {
+        int flags;
+        int termCount;
+        int aliasCount;
+        int termBlockLength;
+        int aliasBlockLength;
+        long postingBlockLength;
+        int dictionaryCrc;
+        int postingCrc;
+
+        static Header read(ByteBuffer buffer, File file) throws IOException {
+            if (buffer.capacity() < HEADER_SIZE)
+                throw new IOException(file + " is not an index file");
+            ByteBuffer in = at(buffer, 0);
+            if (in.getInt() != MAGIC)
+                throw new IOException(file + " is not an index file");
+            short version = in.getShort();
+            if (version != VERSION)
+                throw new IOException(file + " has an unsupported index version: " + version);
+            Header header = new Header();
+            header.flags = in.getShort();
+            header.termCount = in.getInt();
+            header.aliasCount = in.getInt();
+            header.termBlockLength = in.getInt();
+            header.aliasBlockLength = in.getInt();
+            header.postingBlockLength = in.getLong();
+            header.dictionaryCrc = in.getInt();
+            header.postingCrc = in.getInt();
+            if (header.termBlockLength < 0 || header.aliasBlockLength < 0 || header.postingBlockLength < 0
+                    || (long) HEADER_SIZE + header.termBlockLength + header.aliasBlockLength + header.postingBlockLength != buffer.capacity())
+                throw new IOException(file + " is truncated");
+            // a term takes at least 3 bytes (2 lengths and the length of its posting list), an alias as many
+            if (header.termCount < 0 || header.termCount > header.termBlockLength / 3
+                    || header.aliasCount < 0 || header.aliasCount > header.aliasBlockLength / 3)
+                throw new IOException(file + " has a corrupted header");
+            // the header is in the CRC of the dictionary, except its own CRCs
+            ByteBuffer headerFields = at(buffer, 0);
+            ((Buffer) headerFields).limit(HEADER_SIZE - 8);
+            CRC32 crc = new CRC32();
+            crc.update(headerFields);
+            if (crc(crc, buffer, HEADER_SIZE, header.termBlockLength + header.aliasBlockLength) != header.dictionaryCrc)
+                throw new IOException(file + " has a corrupted dictionary");
+            return header;
+        }
+
+        /**
+         * check the CRC of the posting block, which reads the whole file
+         */
+        void checkPostings(ByteBuffer buffer, File file) throws IOException {
+            if (crc(new CRC32(), buffer, postingBlockStart(), (int) postingBlockLength) != postingCrc)
+                throw new IOException(file + " has corrupted postings");
+        }
+
+        boolean isWeighted() {
+            return (flags & WEIGHTED) != 0;
+        }
+
+        int postingBlockStart() {
+            return HEADER_SIZE + termBlockLength + aliasBlockLength;
+        }
+
+        private static int crc(CRC32 crc, ByteBuffer buffer, int position, int length) {
+            ByteBuffer in = at(buffer, position);
+            byte[] chunk = new byte[8192];
+            while (length > 0) {
+                int n = Math.min(length, chunk.length);
+                in.get(chunk, 0, n);
+                crc.update(chunk, 0, n);
+                length -= n;
+            }
+            return (int) crc.getValue();
+        }
+    }
+
+    /**
+     * the decoded term and alias blocks: terms, aliases and the offsets of the posting lists
+     */
+    static final class Dictionary {
+        String[] terms;
+        // offsets[i] is the offset of the posting list of terms[i] in the posting block, offsets[termCount] its length
+        int[] offsets;
+        String[] aliases;
+        int[] aliasTargets;
+
+        /**
+         * @throws IOException when the blocks don't decode to the counts of the header, or the posting lists
+         * and the alias targets are out of their bounds
+         */
+        static Dictionary read(ByteBuffer buffer, Header header, File file) throws IOException {
+            Dictionary dictionary = new Dictionary();
+            try {
+                ByteBuffer in = at(buffer, HEADER_SIZE);
+                ((Buffer) in).limit(HEADER_SIZE + header.termBlockLength);
+                FrontCodedReader reader = new FrontCodedReader();
+                dictionary.terms = new String[header.termCount];
+                dictionary.offsets = new int[header.termCount + 1];
+                for (int i = 0; i < header.termCount; i++) {
+                    dictionary.terms[i] = reader.next(in);
+                    dictionary.offsets[i + 1] = dictionary.offsets[i] + readVarInt(in);
+                    if (dictionary.offsets[i + 1] <= dictionary.offsets[i])
+                        throw new IOException(file + " has a corrupted dictionary");
+                }
+                if (in.hasRemaining() || dictionary.offsets[header.termCount] != header.postingBlockLength)
+                    throw new IOException(file + " has a corrupted dictionary");
+
+                ((Buffer) in).limit(header.postingBlockStart());
+                reader = new FrontCodedReader();
+                dictionary.aliases = new String[header.aliasCount];
+                dictionary.aliasTargets = new int[header.aliasCount];
+                for (int i = 0; i < header.aliasCount; i++) {
+                    dictionary.aliases[i] = reader.next(in);
+                    dictionary.aliasTargets[i] = readVarInt(in);
+                    if (dictionary.aliasTargets[i] < 0 || dictionary.aliasTargets[i] >= header.termCount)
+                        throw new IOException(file + " has a corrupted dictionary");
+                }
+                if (in.hasRemaining())
+                    throw new IOException(file + " has a corrupted dictionary");
+            } catch (RuntimeException e) {
+                // a length beyond its block, or a negative one
+                throw new IOException(file + " has a corrupted dictionary", e);
+            }
+            return dictionary;
+        }
+    }
+
+    /**
+     * decoder of front coded strings, keeping the bytes of the previous string
+     */
+    private static final class FrontCodedReader {
+        private byte[] bytes = new byte[64];
+
+        String next(ByteBuffer in) {
+            int shared = readVarInt(in);
+            int suffix = readVarInt(in);
+            if (shared + suffix > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(shared + suffix, bytes.length * 2));
+            in.get(bytes, shared, suffix);
+            return new String(bytes, 0, shared + suffix, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.sorbonne.book_search_engine.algorithms.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link PostingIndex} reading the posting lists directly from a memory-mapped index file.
+ * Only the terms and the offsets of their posting lists are decoded in the heap; a posting list is decoded
+ * each time it's requested, from pages shared through the OS cache by all the processes mapping the file.
+ * The CRC of the posting block is not checked, it would read the whole file at startup.
+ */
+public class MappedPostingIndex extends SortedTermIndex {
+    private final MappedByteBuffer buffer;
+    private final int postingBlockStart;
+    private final int[] offsets;
+    private final boolean weighted;
+
+    private MappedPostingIndex(MappedByteBuffer buffer, IndexFile.Header header, IndexFile.Dictionary dictionary) {
+        super((header.flags & IndexFile.ALIASES) != 0 ? dictionary.aliases : dictionary.terms,
+                (header.flags & IndexFile.ALIASES) != 0 ? dictionary.aliasTargets : null);
+        this.buffer = buffer;
+        this.postingBlockStart = header.postingBlockStart();
+        this.offsets = dictionary.offsets;
+        this.weighted = header.isWeighted();
+    }
+
+    /**
+     * map an index file in memory
+     * @param file an index file written by {@link IndexFile#write}
+     * @return the index
+     * @throws IOException when the file can't be mapped, or is not a valid index file
+     */
+    public static MappedPostingIndex open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            // the mapping stays valid once the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        IndexFile.Header header = IndexFile.Header.read(buffer, file);
+        return new MappedPostingIndex(buffer, header, IndexFile.Dictionary.read(buffer, header, file));
+    }
+
+    @Override
+    Postings getPostingsAt(int rank) {
+        return IndexFile.readPostings(buffer, postingBlockStart + offsets[rank], weighted);
+    }
+
+    @Override
+    int[] getIdsByRelevanceAt(int rank, int limit) {
+        return IndexFile.readIdsByRelevance(buffer, postingBlockStart + offsets[rank], weighted, limit);
+    }
+}
@@ -0,0 +1,65 @@
+package com.sorbonne.book_search_engine.algorithms.index;
+
+/**
+ * Read-only index table: a dictionary of terms in ascending order, each one with its posting list.
+ * Terms are identified by their rank in the dictionary (term id).
+ */
+public interface PostingIndex {
+    /**
+     * @return a number identifying this index among all the indexes opened since the start,
+     * a rebuilt index has a new generation
+     */
+    long getGeneration();
+
+    /**
+     * @return the number of terms
+     */
+    int size();
+
+    /**
+     * @param termId a term id, between 0 and size() - 1
+     * @return the term
+     */
+    String getTerm(int termId);
+
+    /**
+     * @param term a term
+     * @return the id of the term, or a negative value if the term is not in the dictionary
+     */
+    int getTermId(String term);
+
+    /**
+     * @return the trie of the terms, its nodes giving ranges of term ids
+     */
+    TermTrie getTermTrie();
+
+    /**
+     * @return the index of the trigrams of the terms
+     */
+    TrigramIndex getTrigramIndex();
+
+    /**
+     * @param termId a term id, between 0 and size() - 1
+     * @return the posting list of the term
+     */
+    Postings getPostings(int termId);
+
+    /**
+     * top-k of a posting list, without decoding the rest of the list when the index allows it
+     * @param termId a term id, between 0 and size() - 1
+     * @param limit the maximal number of books
+     * @return the ids of the most relevant books containing the term, by decreasing relevance
+     */
+    default int[] getIdsByRelevance(int termId, int limit) {
+        return getPostings(termId).getIdsByRelevance(limit);
+    }
+
+    /**
+     * @param term a term
+     * @return the posting list of the term, or null if the term is not in the dictionary
+     */
+    default Postings getPostings(String term) {
+        int termId = getTermId(term);
+        return termId < 0 ? null : getPostings(termId);
+    }
+}
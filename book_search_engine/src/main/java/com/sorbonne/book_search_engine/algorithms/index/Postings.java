@@ -0,0 +1,140 @@
+package com.sorbonne.book_search_engine.algorithms.index;
+
+import java.util.Arrays;
+
+/**
+ * A posting list: the ids of the books containing a term, in ascending order,
+ * with the relevance of the term in each book when the index is weighted.
+ * A weighted posting list also knows the order of its books by decreasing relevance,
+ * so a search doesn't have to sort it again.
+ */
+public final class Postings {
+    private final int[] ids;
+    // null for an index without relevance (titles, authors)
+    private final float[] relevances;
+    // positions of the books by decreasing relevance, ties in ascending order of ids; computed on first use if not given
+    private volatile int[] byRelevance;
+
+    public Postings(int[] ids, float[] relevances) {
+        this(ids, relevances, null);
+    }
+
+    /**
+     * @param ids the ids of the books in ascending order
+     * @param relevances the relevance of the term in each book, or null
+     * @param byRelevance the positions of the books by decreasing relevance, or null to compute it when needed
+     */
+    public Postings(int[] ids, float[] relevances, int[] byRelevance) {
+        if (relevances != null && relevances.length != ids.length)
+            throw new IllegalArgumentException("ids and relevances must have the same length");
+        if (byRelevance != null && byRelevance.length != ids.length)
+            throw new IllegalArgumentException("ids and the relevance order must have the same length");
+        this.ids = ids;
+        this.relevances = relevances;
+        this.byRelevance = byRelevance;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int getId(int i) {
+        return ids[i];
+    }
+
+    public boolean isWeighted() {
+        return relevances != null;
+    }
+
+    /**
+     * @param i position in the posting list
+     * @return the relevance of the term in the i-th book, 0 if the index is not weighted
+     */
+    public float getRelevance(int i) {
+        return relevances == null ? 0 : relevances[i];
+    }
+
+    /**
+     * @param id a book id
+     * @return the position of the book in the posting list, or a negative value if it is absent
+     */
+    public int indexOf(int id) {
+        return Arrays.binarySearch(ids, id);
+    }
+
+    /**
+     * @param rank a rank between 0 and size() - 1, 0 for the most relevant book
+     * @return the position of the book having this rank; for a posting list without relevance, the rank itself
+     */
+    public int getPositionByRelevance(int rank) {
+        if (relevances == null)
+            return rank;
+        int[] order = byRelevance;
+        if (order == null) {
+            order = relevanceOrder(relevances);
+            byRelevance = order;
+        }
+        return order[rank];
+    }
+
+    /**
+     * top-k of the posting list
+     * @param limit the maximal number of books
+     * @return the ids of the most relevant books, by decreasing relevance
+     */
+    public int[] getIdsByRelevance(int limit) {
+        int[] top = new int[Math.min(limit, ids.length)];
+        for (int rank = 0; rank < top.length; rank++) {
+            top[rank] = ids[getPositionByRelevance(rank)];
+        }
+        return top;
+    }
+
+    /**
+     * order some books of the posting list like the posting list orders them by relevance
+     * @param subset ids of books of the posting list, in ascending order
+     * @return the ids by decreasing relevance, ties in ascending order of ids
+     */
+    public int[] sortByRelevance(int[] subset) {
+        if (relevances == null)
+            return subset;
+        long[] keys = new long[subset.length];
+        for (int i = 0; i < subset.length; i++) {
+            int position = indexOf(subset[i]);
+            keys[i] = (long) (Integer.MAX_VALUE - Float.floatToIntBits(relevances[position])) << 32 | position;
+        }
+        Arrays.sort(keys);
+        int[] sorted = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = ids[(int) keys[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * sort positions by decreasing relevance, ties in ascending order of positions.
+     * Relevances are not negative, so the bits of a float are ordered like its value,
+     * and each position is sorted as a long (inverted relevance bits, position) without boxing.
+     * @param relevances the relevances of a posting list
+     * @return the positions by decreasing relevance
+     */
+    static int[] relevanceOrder(float[] relevances) {
+        long[] keys = new long[relevances.length];
+        for (int i = 0; i < relevances.length; i++) {
+            keys[i] = (long) (Integer.MAX_VALUE - Float.floatToIntBits(relevances[i])) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * the ids array is shared, callers must not modify it
+     */
+    public int[] getIds() {
+        return ids;
+    }
+}
@@ -0,0 +1,76 @@
+package com.sorbonne.book_search_engine.algorithms.index;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Intersection of posting lists (ids in ascending order), from the smallest list to the largest one.
+ * Each id of the current result is searched in the next list by galloping from the position of the previous id:
+ * steps of 1, 2, 4... then a binary search, so the cost is about r * log(n / r) for a result of r ids
+ * and a list of n ids, instead of n with a merge.
+ */
+public final class PostingsIntersection {
+    private PostingsIntersection() {
+    }
+
+    /**
+     * @param lists sorted arrays of ids, at least one
+     * @return the ids present in all the lists, in ascending order
+     */
+    public static int[] intersect(List<int[]> lists) {
+        int[][] sorted = lists.toArray(new int[0][]);
+        Arrays.sort(sorted, Comparator.comparingInt(list -> list.length));
+        int[] result = sorted[0];
+        for (int l = 1; l < sorted.length && result.length > 0; l++) {
+            result = intersect(result, sorted[l]);
+        }
+        return result;
+    }
+
+    /**
+     * @param small a sorted array of ids
+     * @param large a sorted array of ids, searched by galloping
+     * @return the ids of small present in large, in ascending order
+     */
+    static int[] intersect(int[] small, int[] large) {
+        int[] result = new int[small.length];
+        int count = 0;
+        int position = 0;
+        for (int id: small) {
+            position = gallop(large, position, id);
+            if (position == large.length)
+                break;
+            if (large[position] == id)
+                result[count++] = id;
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @return the first position at or after from where ids[position] >= id, ids.length if there is none
+     */
+    private static int gallop(int[] ids, int from, int id) {
+        if (from >= ids.length || ids[from] >= id)
+            return from;
+        // ids[low] < id: double the step until ids[high] >= id or the end of the array
+        int low = from;
+        int step = 1;
+        int high = from + 1;
+        while (high < ids.length && ids[high] < id) {
+            low = high;
+            step <<= 1;
+            high = from + step;
+        }
+        high = Math.min(high, ids.length);
+        // ids[low] < id <= ids[high], with ids[ids.length] as +infinity
+        while (low + 1 < high) {
+            int middle = (low + high) >>> 1;
+            if (ids[middle] < id)
+                low = middle;
+            else
+                high = middle;
+        }
+        return high;
+    }
+}
@@ -0,0 +1,97 @@
+package com.sorbonne.book_search_engine.algorithms.index;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dictionary part of a {@link PostingIndex}: a sorted array of terms, searched by dichotomy.
+ * When the index file has aliases (words of a stem), the terms of the index are the aliases
+ * and each one leads to the posting list of its stem.
+ */
+abstract class SortedTermIndex implements PostingIndex {
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
+    private final long generation = GENERATIONS.incrementAndGet();
+    private final String[] terms;
+    // for each term, the rank of its posting list, null when terms and posting lists have the same order
+    private final int[] targets;
+    // built on the first regex search
+    private volatile TermTrie trie;
+    private volatile TrigramIndex trigrams;
+
+    SortedTermIndex(String[] terms, int[] targets) {
+        this.terms = terms;
+        this.targets = targets;
+    }
+
+    /**
+     * @param rank rank of a posting list in the index file
+     * @return the posting list
+     */
+    abstract Postings getPostingsAt(int rank);
+
+    /**
+     * @param rank rank of a posting list in the index file
+     * @param limit the maximal number of books
+     * @return the ids of the most relevant books of the posting list
+     */
+    int[] getIdsByRelevanceAt(int rank, int limit) {
+        return getPostingsAt(rank).getIdsByRelevance(limit);
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public int size() {
+        return terms.length;
+    }
+
+    @Override
+    public String getTerm(int termId) {
+        return terms[termId];
+    }
+
+    @Override
+    public int getTermId(String term) {
+        return Arrays.binarySearch(terms, term);
+    }
+
+    @Override
+    public TermTrie getTermTrie() {
+        TermTrie result = trie;
+        if (result == null) {
+            synchronized (this) {
+                result = trie;
+                if (result == null)
+                    trie = result = TermTrie.build(terms);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public TrigramIndex getTrigramIndex() {
+        TrigramIndex result = trigrams;
+        if (result == null) {
+            synchronized (this) {
+                result = trigrams;
+                if (result == null)
+                    trigrams = result = TrigramIndex.build(terms);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Postings getPostings(int termId) {
+        return getPostingsAt(targets == null ? termId : targets[termId]);
+    }
+
+    @Override
+    public int[] getIdsByRelevance(int termId, int limit) {
+        return getIdsByRelevanceAt(targets == null ? termId : targets[termId], limit);
+    }
+}
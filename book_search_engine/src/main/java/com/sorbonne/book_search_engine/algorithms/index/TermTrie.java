@@ -0,0 +1,160 @@
+package com.sorbonne.book_search_engine.algorithms.index;
+
+import java.util.Arrays;
+
+/**
+ * Trie of a sorted dictionary of terms, so an automaton can walk the prefixes shared by many terms only once.
+ * Nodes are numbered in depth-first order from the root 0, so a walk of the trie reads the arrays sequentially:
+ * the subtree of the node n is the nodes [n, end(n)), its first child is n + 1 and its next sibling end(n).
+ * Each node is reached by the char of its label, and the terms starting with its prefix
+ * are the consecutive term ids [from(n), to(n)), the first one being the prefix itself when it is a term.
+ */
+public class TermTrie {
+    public static final int ROOT = 0;
+
+    private final int termCount;
+    private final char[] labels;
+    private final int[] depths;
+    private final int[] ends;
+    private final int[] froms;
+    private final int[] heights;
+
+    private TermTrie(int termCount, char[] labels, int[] depths, int[] ends, int[] froms, int[] heights) {
+        this.termCount = termCount;
+        this.labels = labels;
+        this.depths = depths;
+        this.ends = ends;
+        this.froms = froms;
+        this.heights = heights;
+    }
+
+    /**
+     * @param terms terms in ascending order, without duplicates
+     * @return the trie of the terms
+     */
+    public static TermTrie build(String[] terms) {
+        int capacity = 1;
+        for (String term: terms) {
+            capacity += term.length();
+        }
+        char[] labels = new char[capacity];
+        int[] depths = new int[capacity];
+        int[] froms = new int[capacity];
+        // stack of the nodes to create: their range of terms [from, to), label and depth
+        int[] stackFroms = new int[capacity];
+        int[] stackTos = new int[capacity];
+        char[] stackLabels = new char[capacity];
+        int[] stackDepths = new int[capacity];
+        int top = 0;
+        stackTos[top++] = terms.length;
+        int[] groups = new int[16];
+        int count = 0;
+        while (top > 0) {
+            top--;
+            int node = count++;
+            int from = stackFroms[top];
+            int to = stackTos[top];
+            int depth = stackDepths[top];
+            labels[node] = stackLabels[top];
+            depths[node] = depth;
+            froms[node] = from;
+            // the groups of terms sharing the same next char, pushed in descending order to be popped in ascending order
+            int nGroups = 0;
+            int i = from < to && terms[from].length() == depth ? from + 1 : from;
+            while (i < to) {
+                char c = terms[i].charAt(depth);
+                int j = i + 1;
+                while (j < to && terms[j].charAt(depth) == c)
+                    j++;
+                if (nGroups == groups.length)
+                    groups = Arrays.copyOf(groups, nGroups * 2);
+                groups[nGroups++] = i;
+                i = j;
+            }
+            for (int g = nGroups - 1; g >= 0; g--) {
+                stackFroms[top] = groups[g];
+                stackTos[top] = g + 1 < nGroups ? groups[g + 1] : to;
+                stackLabels[top] = terms[groups[g]].charAt(depth);
+                stackDepths[top++] = depth + 1;
+            }
+        }
+
+        // a subtree ends at the next node which is not deeper than its root
+        int[] ends = new int[count];
+        int[] open = stackFroms;
+        top = 0;
+        for (int node = 0; node < count; node++) {
+            while (top > 0 && depths[open[top - 1]] >= depths[node])
+                ends[open[--top]] = node;
+            open[top++] = node;
+        }
+        while (top > 0)
+            ends[open[--top]] = count;
+
+        // children have greater numbers than their parent
+        int[] heights = new int[count];
+        for (int node = count - 1; node >= 0; node--) {
+            for (int child = node + 1; child < ends[node]; child = ends[child]) {
+                heights[node] = Math.max(heights[node], heights[child] + 1);
+            }
+        }
+        return new TermTrie(terms.length, Arrays.copyOf(labels, count), Arrays.copyOf(depths, count), ends,
+                Arrays.copyOf(froms, count), heights);
+    }
+
+    /**
+     * @return the number of nodes
+     */
+    public int size() {
+        return labels.length;
+    }
+
+    /**
+     * @return the char leading to the node from its parent
+     */
+    public char getLabel(int node) {
+        return labels[node];
+    }
+
+    /**
+     * @return the length of the prefix of the node
+     */
+    public int getDepth(int node) {
+        return depths[node];
+    }
+
+    /**
+     * @return the node after the subtree of the node, the next sibling of the node if it has one
+     */
+    public int getEnd(int node) {
+        return ends[node];
+    }
+
+    /**
+     * @return the first term id starting with the prefix of the node
+     */
+    public int getFrom(int node) {
+        return froms[node];
+    }
+
+    /**
+     * @return the term id after the last one starting with the prefix of the node
+     */
+    public int getTo(int node) {
+        return ends[node] < froms.length ? froms[ends[node]] : termCount;
+    }
+
+    /**
+     * @return the length of the longest suffix of a term below the node
+     */
+    public int getHeight(int node) {
+        return heights[node];
+    }
+
+    /**
+     * @return the approximate size of the trie in memory, in bytes
+     */
+    public long getMemorySize() {
+        return 2L * labels.length + 4L * (depths.length + ends.length + froms.length + heights.length);
+    }
+}
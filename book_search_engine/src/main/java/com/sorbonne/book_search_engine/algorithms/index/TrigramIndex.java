@@ -0,0 +1,105 @@
+package com.sorbonne.book_search_engine.algorithms.index;
+
+import java.util.Arrays;
+
+/**
+ * Index of the trigrams (3 consecutive chars) of a sorted dictionary of terms: for each trigram,
+ * the ids of the terms containing it, in ascending order.
+ * The trigrams are packed in longs (16 bits per char), sorted, and their term ids are stored in compressed rows:
+ * the terms of the trigram grams[g] are termIds[offsets[g]..offsets[g + 1]).
+ */
+public class TrigramIndex {
+    private final long[] grams;
+    private final int[] offsets;
+    private final int[] termIds;
+
+    private TrigramIndex(long[] grams, int[] offsets, int[] termIds) {
+        this.grams = grams;
+        this.offsets = offsets;
+        this.termIds = termIds;
+    }
+
+    /**
+     * @param terms terms in ascending order
+     * @return the trigram index of the terms
+     */
+    public static TrigramIndex build(String[] terms) {
+        int total = 0;
+        for (String term: terms) {
+            total += Math.max(0, term.length() - 2);
+        }
+        long[] occurrences = new long[total];
+        int[] occurrenceTerms = new int[total];
+        int n = 0;
+        for (int termId = 0; termId < terms.length; termId++) {
+            String term = terms[termId];
+            for (int i = 0; i + 2 < term.length(); i++) {
+                occurrenceTerms[n] = termId;
+                occurrences[n++] = gram(term.charAt(i), term.charAt(i + 1), term.charAt(i + 2));
+            }
+        }
+        long[] grams = unique(occurrences.clone());
+
+        // pairs (rank of the trigram << 32 | term id), sorted: the rows of the trigrams one after the other
+        long[] pairs = new long[total];
+        for (int k = 0; k < total; k++) {
+            pairs[k] = (long) Arrays.binarySearch(grams, occurrences[k]) << 32 | occurrenceTerms[k];
+        }
+        pairs = unique(pairs);
+        int[] offsets = new int[grams.length + 1];
+        int[] termIds = new int[pairs.length];
+        for (int k = 0; k < pairs.length; k++) {
+            offsets[(int) (pairs[k] >>> 32) + 1]++;
+            termIds[k] = (int) pairs[k];
+        }
+        for (int g = 0; g < grams.length; g++) {
+            offsets[g + 1] += offsets[g];
+        }
+        return new TrigramIndex(grams, offsets, termIds);
+    }
+
+    /**
+     * @return the trigram of 3 chars, packed in a long
+     */
+    public static long gram(char c0, char c1, char c2) {
+        return (long) c0 << 32 | (long) c1 << 16 | c2;
+    }
+
+    /**
+     * @return the values sorted in ascending order, without duplicates
+     */
+    private static long[] unique(long[] values) {
+        Arrays.sort(values);
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (count == 0 || values[i] != values[count - 1])
+                values[count++] = values[i];
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    /**
+     * @param gram a trigram packed by {@link #gram}
+     * @return the ids of the terms containing the trigram, in ascending order
+     */
+    public int[] getTermIds(long gram) {
+        int g = Arrays.binarySearch(grams, gram);
+        if (g < 0)
+            return new int[0];
+        return Arrays.copyOfRange(termIds, offsets[g], offsets[g + 1]);
+    }
+
+    /**
+     * @return the number of distinct trigrams
+     */
+    public int size() {
+        return grams.length;
+    }
+
+    /**
+     * @return the approximate size of the index in memory, in bytes
+     */
+    public long getMemorySize() {
+        return 8L * grams.length + 4L * (offsets.length + termIds.length);
+    }
+}
@@ -3,41 +3,59 @@ package com.sorbonne.book_search_engine.algorithms.keyword;
 import org.tartarus.snowball.SnowballStemmer;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multimap;
 
 /**
  * Created by Sylvain in 2022/01.
  */
 public class KeywordsExtractor {
     private final SnowballStemmer stemmer;
+    private final StemCache stemCache;
     private final Set<Character> alphabet = new HashSet<>();
-    private final Set<String> stopWords = new HashSet<>();
-    private final HashMultiset<String> stemmedWords = HashMultiset.create();
-    private final Multimap<String, String> wordsByStem = ArrayListMultimap.create();
-    private final StringBuilder currentWord = new StringBuilder();
+    private final WordTable stopWords = new WordTable();
+    private final Tokenizer tokenizer;
+
+    // words of the current book, and their stems numbered in the order they first occur
+    private final WordTable words = new WordTable();
+    private int[] wordStems = new int[64];
+    private final List<String> stems = new ArrayList<>();
+    private final Map<String, Integer> stemIds = new HashMap<>();
+    private int[] stemCounts = new int[64];
+    // the words of a stem, as a list of keys of words (see addWord): key + 1 of the first one by stem,
+    // and key + 1 of the next one by key, 0 at the end
+    private int[] stemFirstWords = new int[64];
+    private int[] nextWords = new int[64];
+    private int totalWordsCount;
 
     public KeywordsExtractor(StemmerLanguage stemmerLanguage){
+        this(stemmerLanguage, new StemCache(StemCache.DEFAULT_CAPACITY));
+    }
+
+    /**
+     * @param stemmerLanguage the language of the books
+     * @param stemCache the cache of the stems of the language, which can be shared with other extractors
+     */
+    public KeywordsExtractor(StemmerLanguage stemmerLanguage, StemCache stemCache){
         this.stemmer = stemmerLanguage.getStemmer();
+        this.stemCache = stemCache;
         this.readAlphabet(stemmerLanguage);
         this.readStopWords(stemmerLanguage);
+        // without an alphabet file, the words are made of letters and of the marks combined with them
+        this.tokenizer = new Tokenizer(alphabet.isEmpty() ? Tokenizer::isLetterOrMark : alphabet::contains);
     }
 
     /**
-     * read alphabet from file by language
+     * read alphabet from file by language, if the language has one
      */
     private void readAlphabet(StemmerLanguage stemmerLanguage){
-        String filename = "language/" + stemmerLanguage.getCode() + "/alphabet.txt";
-        BufferedReader reader = null;
-        try {
-            reader = new BufferedReader(new FileReader(filename));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
-        try {
+        File file = new File("language/" + stemmerLanguage.getCode() + "/alphabet.txt");
+        if (!file.exists())
+            return;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
             String line = reader.readLine();
             while (line != null) {
                 alphabet.add(line.charAt(0));
@@ -49,20 +67,17 @@ public class KeywordsExtractor {
     }
 
     /**
-     * read stop words from file by language
+     * read stop words from file by language, if the language has one
      */
     private void readStopWords(StemmerLanguage stemmerLanguage){
-        String filename = "language/" + stemmerLanguage.getCode() + "/stopwords.txt";
-        BufferedReader reader = null;
-        try {
-            reader = new BufferedReader(new FileReader(filename));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
-        try {
+        File file = new File("language/" + stemmerLanguage.getCode() + "/stopwords.txt");
+        if (!file.exists())
+            return;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
             String line = reader.readLine();
             while (line != null) {
-                stopWords.add(line.trim());
+                String stopWord = line.trim();
+                stopWords.add(stopWord.toCharArray(), 0, stopWord.length());
                 line = reader.readLine();
             }
         } catch (IOException e) {
@@ -76,54 +91,52 @@ public class KeywordsExtractor {
      * @return list of main keywords
      * @throws IOException when error while reading from stream occurs
      */
-    public List<Keyword> extract(FileReader text) throws IOException {
-        BufferedReader reader = new BufferedReader(text);
+    public List<Keyword> extract(Reader text) throws IOException {
+        clear();
+        tokenizer.tokenize(text, this::addWord);
+        return getKeywords();
+    }
 
-        stemmedWords.clear();
-        wordsByStem.clear();
-        currentWord.setLength(0);
+    /**
+     * Extract a list of keywords for a book encoded in UTF-8
+     * @param text the bytes of the book, for instance its memory-mapped file
+     * @return list of main keywords
+     */
+    public List<Keyword> extract(ByteBuffer text) {
+        clear();
+        tokenizer.tokenize(text, this::addWord);
+        return getKeywords();
+    }
 
-        int ci = reader.read();
-        boolean isNewSentence = true;
-        boolean stemCurrentWord = true;
-        String word;
-        while (ci != -1) { //browsing the text, char by char
-            char c = (char) Character.toLowerCase(ci);
-            if (alphabet.contains(c)) { //if current char is in the alphabet (which is a space)
-                if (!isNewSentence && Character.isUpperCase(ci)) {
-                    stemCurrentWord = false;
-                }
-                currentWord.append(c); //it is the next char of the current word
-                isNewSentence = false;
-            } else {                   //else we have a word!
-                word = currentWord.toString();
-                currentWord.setLength(0);
-                if (!word.isEmpty() && !stopWords.contains(word)) { //if the word is not a stop word
-                    String stemmedWord = word;
-                    if (stemCurrentWord) {
-                        stemmer.setCurrent(word);
-                        stemmer.stem();
-                        stemmedWord = stemmer.getCurrent();
-                    }
-                    wordsByStem.put(stemmedWord, word);
-                    stemmedWords.add(stemmedWord);
-                }
+    private void clear() {
+        words.clear();
+        wordStems = new int[64];
+        stems.clear();
+        stemIds.clear();
+        stemCounts = new int[64];
+        stemFirstWords = new int[64];
+        nextWords = new int[64];
+        totalWordsCount = 0;
+    }
 
-                if (c == '.') {
-                    isNewSentence = true;
-                }
-                stemCurrentWord = true;
-            }
-            ci = reader.read();
+    /**
+     * @return the main keywords of the words added since the last clear
+     */
+    private List<Keyword> getKeywords() {
+        // stems added to a multiset in the order they first occur, so the keywords of equal relevance
+        // are in the same order as when every word was added to it
+        HashMultiset<String> stemmedWords = HashMultiset.create();
+        for (int stemId = 0; stemId < stems.size(); stemId++) {
+            stemmedWords.add(stems.get(stemId), stemCounts[stemId]);
         }
+
         //counting words and computing relevance
-        int totalWordsCount = stemmedWords.size();
         List<Keyword> result = new ArrayList<>();
         for (String stem : stemmedWords.elementSet()) {
+            int stemId = stemIds.get(stem);
             Keyword keyword = new Keyword();
             keyword.setStem(stem);
-            keyword.setRelevance(stemmedWords.count(stem) / (double) totalWordsCount);
-            keyword.setWords(new HashSet<>(wordsByStem.get(stem)));
+            keyword.setRelevance(stemCounts[stemId] / (double) totalWordsCount);
             result.add(keyword);
         }
         Collections.sort(result);
@@ -134,6 +147,52 @@ public class KeywordsExtractor {
             relevanceSum += result.get(i).getRelevance();
             i++;
         }
-        return result.subList(0, Math.max(1, i - 1));
+        result = result.subList(0, Math.max(1, i - 1));
+        // the words are only created for the keywords kept
+        for (Keyword keyword : result) {
+            Set<String> keywordWords = new HashSet<>();
+            for (int key = stemFirstWords[stemIds.get(keyword.getStem())] - 1; key >= 0; key = nextWords[key] - 1) {
+                keywordWords.add(words.getWord(key / 2));
+            }
+            keyword.setWords(keywordWords);
+        }
+        return result;
+    }
+
+    /**
+     * count an occurrence of a word which is not a stop word, the stem of a word is only looked up
+     * the first time the word occurs in the book (for each value of stem), in the stem cache.
+     * No String is created for the word, only for a stem which is not in the cache, or for a word not stemmed
+     */
+    private void addWord(char[] chars, int start, int length, boolean stem) {
+        if (stopWords.find(chars, start, length) >= 0)
+            return;
+        int wordId = words.add(chars, start, length);
+        // stem id + 1 of each word, for each value of stem, 0 until it is known
+        int key = 2 * wordId + (stem ? 1 : 0);
+        if (key >= wordStems.length) {
+            wordStems = Arrays.copyOf(wordStems, Math.max(2 * wordStems.length, key + 2));
+            nextWords = Arrays.copyOf(nextWords, wordStems.length);
+        }
+        int stemId = wordStems[key] - 1;
+        if (stemId < 0) {
+            String stemmedWord = stem ? stemCache.stem(chars, start, length, stemmer) : words.getWord(wordId);
+            Integer id = stemIds.get(stemmedWord);
+            if (id == null) {
+                id = stems.size();
+                stemIds.put(stemmedWord, id);
+                stems.add(stemmedWord);
+                if (id == stemCounts.length) {
+                    stemCounts = Arrays.copyOf(stemCounts, id * 2);
+                    stemFirstWords = Arrays.copyOf(stemFirstWords, id * 2);
+                }
+            }
+            nextWords[key] = stemFirstWords[id];
+            stemFirstWords[id] = key + 1;
+            stemId = id;
+            wordStems[key] = stemId + 1;
+        }
+        stemCounts[stemId]++;
+        totalWordsCount++;
     }
 }
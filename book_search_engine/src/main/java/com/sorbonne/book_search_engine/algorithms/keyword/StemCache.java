@@ -0,0 +1,105 @@
+package com.sorbonne.book_search_engine.algorithms.keyword;
+
+import org.tartarus.snowball.SnowballStemmer;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the stems of the words of one language, shared by the extractors of all the threads
+ * while the index is built, so a common word is stemmed once for all the books.
+ * A word has one slot chosen by its hash, holding the last word stemmed there: a word replaces the one
+ * of its slot, so the cache keeps at most capacity words.
+ * A word is looked up as a range of a buffer, so a String is only created for the stem of a new word.
+ * The cache has no lock: a slot holds an immutable entry, written and read as one reference,
+ * and two threads stemming the same word at the same time only compute its stem twice.
+ */
+public class StemCache {
+    /**
+     * default maximal number of words of a cache
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final Entry[] entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity the maximal number of words, rounded up to a power of 2
+     */
+    public StemCache(int capacity) {
+        int size = Math.max(1, Math.min(capacity, 1 << 30));
+        entries = new Entry[Integer.bitCount(size) == 1 ? size : Integer.highestOneBit(size) << 1];
+    }
+
+    /**
+     * @param chars a buffer containing a word in lower case
+     * @param start start of the word in the buffer
+     * @param length length of the word
+     * @param stemmer the stemmer of the language of the cache, used when the word is not in the cache
+     * @return the stem of the word, the word is only copied when it is added to the cache
+     */
+    public String stem(char[] chars, int start, int length, SnowballStemmer stemmer) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (entries.length - 1);
+        Entry entry = entries[slot];
+        if (entry != null && entry.hash == hash && entry.equals(chars, start, length)) {
+            hits.increment();
+            return entry.stem;
+        }
+        misses.increment();
+        stemmer.setCurrent(chars, start, length);
+        stemmer.stem();
+        String stem = stemmer.getCurrent();
+        entries[slot] = new Entry(Arrays.copyOfRange(chars, start, start + length), hash, stem);
+        return stem;
+    }
+
+    /**
+     * @return the number of words found in the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of words stemmed by the stemmer
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the proportion of the words found in the cache, 0 before any word
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : h / (double) total;
+    }
+
+    private static class Entry {
+        private final char[] word;
+        private final int hash;
+        private final String stem;
+
+        private Entry(char[] word, int hash, String stem) {
+            this.word = word;
+            this.hash = hash;
+            this.stem = stem;
+        }
+
+        private boolean equals(char[] chars, int start, int length) {
+            if (word.length != length)
+                return false;
+            for (int i = 0; i < length; i++) {
+                if (word[i] != chars[start + i])
+                    return false;
+            }
+            return true;
+        }
+    }
+}
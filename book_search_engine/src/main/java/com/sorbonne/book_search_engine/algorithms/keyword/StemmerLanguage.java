@@ -1,17 +1,31 @@
 package com.sorbonne.book_search_engine.algorithms.keyword;
 
 import org.tartarus.snowball.SnowballStemmer;
-import org.tartarus.snowball.ext.englishStemmer;
-import org.tartarus.snowball.ext.frenchStemmer;
+import org.tartarus.snowball.ext.*;
 
+import java.util.Collection;
 import java.util.function.Supplier;
 
 /**
  * Created by Sylvain in 2022/01.
+ * The languages of the books indexed, by ISO 639-1 code: the languages of the snowball stemmers having a stop word list
+ * in language/&lt;code&gt;/stopwords.txt, as without one their function words would be most of the keywords of a book.
+ * English and French come first: a book in several languages is indexed in the first of them in this order.
  */
 public enum StemmerLanguage {
+    ENGLISH("en", englishStemmer::new),
     FRENCH("fr", frenchStemmer::new),
-    ENGLISH("en", englishStemmer::new);
+    DANISH("da", danishStemmer::new),
+    DUTCH("nl", dutchStemmer::new),
+    FINNISH("fi", finnishStemmer::new),
+    GERMAN("de", germanStemmer::new),
+    HUNGARIAN("hu", hungarianStemmer::new),
+    ITALIAN("it", italianStemmer::new),
+    NORWEGIAN("no", norwegianStemmer::new),
+    PORTUGUESE("pt", portugueseStemmer::new),
+    RUSSIAN("ru", russianStemmer::new),
+    SPANISH("es", spanishStemmer::new),
+    SWEDISH("sv", swedishStemmer::new);
 
     private final String code;
     private final Supplier<SnowballStemmer> stemmerSupplier;
@@ -28,4 +42,16 @@ public enum StemmerLanguage {
     public SnowballStemmer getStemmer() {
         return stemmerSupplier.get();
     }
+
+    /**
+     * @param codes the ISO 639-1 codes of the languages of a book
+     * @return the first language of the book with a stemmer, null if there is none
+     */
+    public static StemmerLanguage of(Collection<String> codes) {
+        for (StemmerLanguage language : values()) {
+            if (codes.contains(language.code))
+                return language;
+        }
+        return null;
+    }
 }
@@ -0,0 +1,152 @@
+package com.sorbonne.book_search_engine.algorithms.keyword;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Splits a text in words of the chars of an alphabet, reading the text by large blocks of chars,
+ * or decoding them from the UTF-8 bytes of the text, for instance a memory-mapped file.
+ * Each char is classified by lookup tables built once from the alphabet: its lower case if the lower case
+ * is in the alphabet (0 otherwise), and whether it is an upper case letter.
+ * The words are put in lower case in the block itself and given to a {@link Handler} as a range of the block,
+ * so no String is created by the tokenizer. A word must not be stemmed when it has an upper case letter
+ * other than the first letter of a sentence, as it is likely a name.
+ * A tokenizer reuses its block and its decoder, it is used by one thread.
+ */
+public class Tokenizer {
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    // lower case of each char when it is in the alphabet, 0 otherwise
+    private final char[] lowers = new char[1 << 16];
+    private final boolean[] uppers = new boolean[1 << 16];
+    private char[] block = new char[BLOCK_SIZE];
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // the current word is block[start..end), the chars before end are already read
+    private int start;
+    private int end;
+    private boolean isNewSentence;
+    private boolean stemCurrentWord;
+
+    /**
+     * receives the words of a text
+     */
+    public interface Handler {
+        /**
+         * @param chars a buffer, only valid during the call
+         * @param start start of the word in the buffer
+         * @param length length of the word, in lower case
+         * @param stem false if the word must not be stemmed
+         */
+        void word(char[] chars, int start, int length, boolean stem);
+    }
+
+    /**
+     * @param alphabet true for the chars of the words, in lower case
+     */
+    public Tokenizer(Predicate<Character> alphabet) {
+        for (int ci = 0; ci < lowers.length; ci++) {
+            char c = (char) Character.toLowerCase(ci);
+            if (alphabet.test(c)) {
+                lowers[ci] = c;
+                uppers[ci] = Character.isUpperCase(ci);
+            }
+        }
+    }
+
+    /**
+     * @return true for a letter, or a mark combined with the letter before it (as the vowel signs of the
+     * Devanagari or Tamil scripts), which is part of the word
+     */
+    public static boolean isLetterOrMark(char c) {
+        switch (Character.getType(c)) {
+            case Character.NON_SPACING_MARK:
+            case Character.COMBINING_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+                return true;
+            default:
+                return Character.isLetter(c);
+        }
+    }
+
+    /**
+     * split a text in words, a word at the end of the text without any char after it is not given
+     * @param text the text
+     * @param handler the receiver of the words
+     * @throws IOException when error while reading from stream occurs
+     */
+    public void tokenize(Reader text, Handler handler) throws IOException {
+        reset();
+        int n;
+        while ((n = text.read(block, end, block.length - end)) != -1) {
+            scan(end + n, handler);
+        }
+    }
+
+    /**
+     * split a text encoded in UTF-8 in words, decoding it by blocks straight into the block of the tokenizer,
+     * a word at the end of the text without any char after it is not given
+     * @param utf8 the bytes of the text, from its position to its limit, the buffer itself is not modified
+     * @param handler the receiver of the words
+     */
+    public void tokenize(ByteBuffer utf8, Handler handler) {
+        reset();
+        ByteBuffer bytes = utf8.duplicate();
+        decoder.reset();
+        boolean decoded = false;
+        while (!decoded) {
+            CharBuffer chars = CharBuffer.wrap(block, end, block.length - end);
+            // an overflow when the block is full, an underflow once all the bytes are decoded
+            if (decoder.decode(bytes, chars, true).isUnderflow()) {
+                decoder.flush(chars);
+                decoded = true;
+            }
+            scan(chars.position(), handler);
+        }
+    }
+
+    private void reset() {
+        start = 0;
+        end = 0;
+        isNewSentence = true;
+        stemCurrentWord = true;
+    }
+
+    /**
+     * give the words of the chars read in block[end..to), then move the current word to the beginning of the block
+     */
+    private void scan(int to, Handler handler) {
+        for (int i = end; i < to; i++) {
+            char ci = block[i];
+            char c = lowers[ci];
+            if (c != 0) {
+                if (!isNewSentence && uppers[ci])
+                    stemCurrentWord = false;
+                block[i] = c;
+                isNewSentence = false;
+            } else {
+                if (i > start)
+                    handler.word(block, start, i - start, stemCurrentWord);
+                if (ci == '.')
+                    isNewSentence = true;
+                stemCurrentWord = true;
+                start = i + 1;
+            }
+        }
+        end = to - start;
+        System.arraycopy(block, start, block, 0, end);
+        start = 0;
+        // the block grows when the word fills it, there is always room for a surrogate pair
+        if (end >= block.length - 1)
+            block = Arrays.copyOf(block, block.length * 2);
+    }
+}
@@ -0,0 +1,111 @@
+package com.sorbonne.book_search_engine.algorithms.keyword;
+
+import java.util.Arrays;
+
+/**
+ * Set of words looked up by a range of a char buffer, so a word read by the {@link Tokenizer} is found
+ * without creating a String. Words are numbered from 0 in the order they are added,
+ * their chars are stored one after the other, and an open addressing table leads from a hash to the words.
+ */
+final class WordTable {
+    private char[] chars = new char[1024];
+    // the word w is chars[offsets[w]..offsets[w + 1])
+    private int[] offsets = new int[65];
+    private int size = 0;
+    // word + 1 by slot, 0 for an empty slot
+    private int[] slots = new int[128];
+    private int[] hashes = new int[64];
+
+    /**
+     * @return the id of the word, -1 if it is not in the table
+     */
+    int find(char[] word, int start, int length) {
+        int hash = hash(word, start, length);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && equals(id, word, start, length))
+                return id;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the id of the word, added to the table if it was not in it
+     */
+    int add(char[] word, int start, int length) {
+        int hash = hash(word, start, length);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && equals(id, word, start, length))
+                return id;
+        }
+        int id = size++;
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+        }
+        if (offsets[id] + length > chars.length)
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, offsets[id] + length));
+        System.arraycopy(word, start, chars, offsets[id], length);
+        offsets[id + 1] = offsets[id] + length;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        // at most half of the slots are used
+        if (size * 2 > slots.length)
+            rehash();
+        return id;
+    }
+
+    /**
+     * @return the word of an id
+     */
+    String getWord(int id) {
+        return new String(chars, offsets[id], offsets[id + 1] - offsets[id]);
+    }
+
+    /**
+     * @return the number of words
+     */
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+        Arrays.fill(slots, 0);
+    }
+
+    private boolean equals(int id, char[] word, int start, int length) {
+        int from = offsets[id];
+        if (offsets[id + 1] - from != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (chars[from + i] != word[start + i])
+                return false;
+        }
+        return true;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int hash(char[] word, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + word[i];
+        }
+        // the low bits choose the slot, as in HashMap
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,20 +1,273 @@
 package com.sorbonne.book_search_engine.algorithms.keyword.config;
 
-import com.sorbonne.book_search_engine.algorithms.keyword.Keyword;
-import javafx.util.Pair;
-import lombok.Data;
+import com.sorbonne.book_search_engine.algorithms.index.IntObjectHashMap;
+import com.sorbonne.book_search_engine.algorithms.index.Postings;
 
-import java.io.Serializable;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
 
 /**
  * Created by Sylvain in 2022/01.
+ * The tables are stored in primitive arrays: a stem is identified by its rank among the sorted stems,
+ * each stem has the posting list of the books containing it, and each book the list of its stems.
+ * The map getters are read-only views over these arrays, created once, whose values are boxed on each access:
+ * a search uses the posting lists or the primitive getters instead.
  */
-@Data
-public class KeywordDictionary implements Serializable {
-    private final HashMap<String, String> word2Keyword;
-    private final HashMap<String, HashMap<Integer, Double>> keywordInBooks;
-    private final HashMap<Integer, HashMap<String, Double>> keywordBookTable;
+public class KeywordDictionary {
+    // words in ascending order, with the id of their stem
+    private final String[] words;
+    private final int[] wordStems;
+    // stems in ascending order, with the books containing them and their relevance
+    private final String[] stems;
+    private final Postings[] stemPostings;
+    // for each book, the ids of its stems in ascending order and their relevance
+    private final IntObjectHashMap<Postings> bookStems;
+    // read-only views over the arrays
+    private final Map<String, String> word2Keyword;
+    private final Map<String, Map<Integer, Double>> keywordInBooks;
+    private final Map<Integer, Map<String, Double>> keywordBookTable;
+
+    /**
+     * @param words the words in ascending order
+     * @param wordStems the id of the stem of each word
+     * @param stems the stems in ascending order
+     * @param stemPostings the weighted posting list of each stem
+     */
+    public KeywordDictionary(String[] words, int[] wordStems, String[] stems, Postings[] stemPostings) {
+        this.words = words;
+        this.wordStems = wordStems;
+        this.stems = stems;
+        this.stemPostings = stemPostings;
+        this.bookStems = invert(stemPostings);
+        this.word2Keyword = new ArrayMap<>(words.length, i -> words[i], word -> Arrays.binarySearch(words, word),
+                i -> stems[wordStems[i]]);
+        this.keywordInBooks = new ArrayMap<>(stems.length, i -> stems[i], stem -> Arrays.binarySearch(stems, stem),
+                i -> postingsMap(stemPostings[i], bookId -> bookId, bookId -> bookId));
+        int[] bookIds = bookStems.keys();
+        this.keywordBookTable = new ArrayMap<>(bookIds.length, i -> bookIds[i],
+                bookId -> Arrays.binarySearch(bookIds, bookId),
+                i -> postingsMap(bookStems.get(bookIds[i]), stemId -> stems[stemId], stem -> Arrays.binarySearch(stems, stem)));
+    }
+
+    /**
+     * build the per-book table, the mirror of the posting lists of the stems
+     */
+    private static IntObjectHashMap<Postings> invert(Postings[] stemPostings) {
+        IntObjectHashMap<int[]> counts = new IntObjectHashMap<>(1024);
+        for (Postings postings: stemPostings) {
+            for (int i = 0; i < postings.size(); i++) {
+                int[] count = counts.get(postings.getId(i));
+                if (count == null)
+                    counts.put(postings.getId(i), new int[]{1});
+                else
+                    count[0]++;
+            }
+        }
+        IntObjectHashMap<int[]> bookStemIds = new IntObjectHashMap<>(counts.size());
+        IntObjectHashMap<float[]> bookRelevances = new IntObjectHashMap<>(counts.size());
+        for (int bookId: counts.keys()) {
+            int[] count = counts.get(bookId);
+            bookStemIds.put(bookId, new int[count[0]]);
+            bookRelevances.put(bookId, new float[count[0]]);
+            count[0] = 0;
+        }
+        // stems are visited in ascending order, so the stems of each book are filled in ascending order
+        for (int stem = 0; stem < stemPostings.length; stem++) {
+            Postings postings = stemPostings[stem];
+            for (int i = 0; i < postings.size(); i++) {
+                int bookId = postings.getId(i);
+                int n = counts.get(bookId)[0]++;
+                bookStemIds.get(bookId)[n] = stem;
+                bookRelevances.get(bookId)[n] = postings.getRelevance(i);
+            }
+        }
+        IntObjectHashMap<Postings> bookStems = new IntObjectHashMap<>(counts.size());
+        for (int bookId: counts.keys()) {
+            bookStems.put(bookId, new Postings(bookStemIds.get(bookId), bookRelevances.get(bookId)));
+        }
+        return bookStems;
+    }
+
+    public int getStemCount() {
+        return stems.length;
+    }
+
+    public String getStem(int stemId) {
+        return stems[stemId];
+    }
+
+    /**
+     * @return the id of the stem, or a negative value if it is absent
+     */
+    public int getStemId(String stem) {
+        return Arrays.binarySearch(stems, stem);
+    }
+
+    /**
+     * @return the id of the stem of a word, or a negative value if the word is absent
+     */
+    public int getStemIdOfWord(String word) {
+        int i = Arrays.binarySearch(words, word);
+        return i < 0 ? -1 : wordStems[i];
+    }
+
+    /**
+     * @return the books containing a stem, with the relevance of the stem in each book
+     */
+    public Postings getStemPostings(int stemId) {
+        return stemPostings[stemId];
+    }
+
+    /**
+     * @param stemId the id of a stem
+     * @param bookId the id of a book
+     * @return the relevance of the stem in the book, 0 if the book doesn't contain it
+     */
+    public float getRelevance(int stemId, int bookId) {
+        Postings postings = stemPostings[stemId];
+        int i = postings.indexOf(bookId);
+        return i < 0 ? 0 : postings.getRelevance(i);
+    }
+
+    /**
+     * @param stem a stem
+     * @param bookId the id of a book
+     * @return the relevance of the stem in the book, 0 if the stem is absent or the book doesn't contain it
+     */
+    public float getRelevance(String stem, int bookId) {
+        int stemId = getStemId(stem);
+        return stemId < 0 ? 0 : getRelevance(stemId, bookId);
+    }
+
+    /**
+     * @return the ids of the stems of a book with their relevance, or null if the book has no keyword
+     */
+    public Postings getBookStems(int bookId) {
+        return bookStems.get(bookId);
+    }
+
+    /**
+     * @return the ids of the books having keywords, in ascending order
+     */
+    public int[] getBookIds() {
+        return bookStems.keys();
+    }
+
+    public String[] getWords() {
+        return words;
+    }
+
+    public int[] getWordStems() {
+        return wordStems;
+    }
+
+    public String[] getStems() {
+        return stems;
+    }
+
+    /**
+     * @return a read-only map of <word, stem>
+     */
+    public Map<String, String> getWord2Keyword() {
+        return word2Keyword;
+    }
+
+    /**
+     * @return a read-only map of <Stem, map <Id_book, Relevancy_Keyword_Book>>
+     */
+    public Map<String, Map<Integer, Double>> getKeywordInBooks() {
+        return keywordInBooks;
+    }
+
+    /**
+     * @return a read-only map of <Id_book, map<Stem, Relevance>>
+     */
+    public Map<Integer, Map<String, Double>> getKeywordBookTable() {
+        return keywordBookTable;
+    }
+
+    private static <K> Map<K, Double> postingsMap(Postings postings, IntFunction<K> keyOfId, ToIntFunction<K> idOfKey) {
+        return new ArrayMap<>(postings.size(), i -> keyOfId.apply(postings.getId(i)),
+                key -> postings.indexOf(idOfKey.applyAsInt(key)), i -> (double) postings.getRelevance(i));
+    }
+
+    /**
+     * read-only map over n entries stored in arrays, looked up by binary search
+     */
+    private static class ArrayMap<K, V> extends AbstractMap<K, V> {
+        private final int size;
+        private final IntFunction<K> keyAt;
+        private final ToIntFunction<K> indexOf;
+        private final IntFunction<V> valueAt;
+
+        ArrayMap(int size, IntFunction<K> keyAt, ToIntFunction<K> indexOf, IntFunction<V> valueAt) {
+            this.size = size;
+            this.keyAt = keyAt;
+            this.indexOf = indexOf;
+            this.valueAt = valueAt;
+        }
+
+        @SuppressWarnings("unchecked")
+        private int find(Object key) {
+            try {
+                return key == null ? -1 : indexOf.applyAsInt((K) key);
+            } catch (ClassCastException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return find(key) >= 0;
+        }
+
+        @Override
+        public V get(Object key) {
+            int i = find(key);
+            return i < 0 ? null : valueAt.apply(i);
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return new AbstractSet<Entry<K, V>>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new Iterator<Entry<K, V>>() {
+                        private int i = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < size;
+                        }
+
+                        @Override
+                        public Entry<K, V> next() {
+                            if (i >= size)
+                                throw new NoSuchElementException();
+                            Entry<K, V> entry = new SimpleImmutableEntry<>(keyAt.apply(i), valueAt.apply(i));
+                            i++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+    }
 }
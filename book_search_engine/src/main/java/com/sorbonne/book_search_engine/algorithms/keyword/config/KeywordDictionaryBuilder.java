@@ -0,0 +1,99 @@
+package com.sorbonne.book_search_engine.algorithms.keyword.config;
+
+import com.sorbonne.book_search_engine.algorithms.index.Postings;
+import com.sorbonne.book_search_engine.algorithms.keyword.Keyword;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Accumulates the keywords of a set of books, then packs them into the arrays of a {@link KeywordDictionary}.
+ * One builder is used per shard of the library during a parallel build, the shards are then
+ * merged in library order, so the result is the same as the one of a single builder fed with all the books.
+ */
+public class KeywordDictionaryBuilder {
+    // a map of <word, stem>
+    private final HashMap<String, String> word2Keyword = new HashMap<>();
+    // a map of <Stem, map <Id_book, Relevancy_Keyword_Book>>
+    private final HashMap<String, HashMap<Integer, Double>> keywordInBooks = new HashMap<>();
+
+    /**
+     * add the keywords extracted from a book
+     * @param bookId the id of the book
+     * @param keywords the keywords of the book
+     */
+    public void addBook(int bookId, List<Keyword> keywords){
+        for (Keyword keyword: keywords){
+            String stem = keyword.getStem();
+            Set<String> words = keyword.getWords();
+            double relevance = keyword.getRelevance();
+
+            // word2Keyword
+            for (String word: words){
+                word2Keyword.put(word, stem);
+            }
+
+            // keywordInBooks
+            if (keywordInBooks.containsKey(stem)){
+                HashMap<Integer, Double> keywordRelevance = keywordInBooks.get(stem);
+                keywordRelevance.put(bookId, relevance);
+            }else {
+                HashMap<Integer, Double> keywordRelevance = new HashMap<>();
+                keywordRelevance.put(bookId, relevance);
+                keywordInBooks.put(stem, keywordRelevance);
+            }
+        }
+    }
+
+    /**
+     * append the tables of a shard built on the books following the ones of this builder.
+     * Entries are put one by one in the order of the shard, so the maps grow exactly as if the books
+     * of the shard had been added to this builder.
+     * @param shard a builder of the next books of the library
+     */
+    public void merge(KeywordDictionaryBuilder shard){
+        for (Map.Entry<String, String> entry: shard.word2Keyword.entrySet()){
+            word2Keyword.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, HashMap<Integer, Double>> entry: shard.keywordInBooks.entrySet()){
+            HashMap<Integer, Double> keywordRelevance = keywordInBooks.get(entry.getKey());
+            if (keywordRelevance == null){
+                keywordInBooks.put(entry.getKey(), entry.getValue());
+            }else {
+                for (Map.Entry<Integer, Double> relevance: entry.getValue().entrySet()){
+                    keywordRelevance.put(relevance.getKey(), relevance.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * pack the tables in sorted arrays, the per-book table is derived from the posting lists of the stems
+     * @return the keyword dictionary
+     */
+    public KeywordDictionary build(){
+        String[] stems = keywordInBooks.keySet().toArray(new String[0]);
+        Arrays.sort(stems);
+        Postings[] stemPostings = new Postings[stems.length];
+        for (int i = 0; i < stems.length; i++) {
+            HashMap<Integer, Double> keywordRelevance = keywordInBooks.get(stems[i]);
+            int[] ids = keywordRelevance.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            float[] relevances = new float[ids.length];
+            for (int j = 0; j < ids.length; j++) {
+                relevances[j] = keywordRelevance.get(ids[j]).floatValue();
+            }
+            stemPostings[i] = new Postings(ids, relevances);
+        }
+
+        String[] words = word2Keyword.keySet().toArray(new String[0]);
+        Arrays.sort(words);
+        int[] wordStems = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            wordStems[i] = Arrays.binarySearch(stems, word2Keyword.get(words[i]));
+        }
+        return new KeywordDictionary(words, wordStems, stems, stemPostings);
+    }
+}
@@ -0,0 +1,237 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Search of a regex in the texts of the books, <directory>/<id>.txt, instead of in their keywords.
+ * The texts are memory-mapped and shared by all the searches through the OS cache: the mappings of the
+ * most recently scanned texts are kept, so the number of mappings of the process stays bounded
+ * (the JVM collects the other ones when a mapping fails). A text which can't be read is skipped by the search
+ * and read again by the next one.
+ * A text is only decoded and matched (in lower case) when its bytes contain the literal required by the regex,
+ * compared ignoring the case of ASCII letters: the chars of the literal which are also the lower case of a non ASCII
+ * char (i of U+0130, k of the Kelvin sign) are left out of the comparison, as the text could have them. It is then decoded by blocks of chars, in a block reused by the thread,
+ * and the decoding stops at the first block with a match.
+ * The books are taken in order by a few tasks running in parallel, which stop taking books once the search
+ * is cancelled, or once enough books match: the books taken before are still finished, so the result is always
+ * the first matching books in order.
+ */
+@Slf4j
+public class BookTextScanner {
+    // the ASCII chars which are the lower case of a non ASCII char
+    private static final boolean[] LOWER_OF_NON_ASCII = new boolean[0x80];
+
+    static {
+        for (int c = 0x80; c <= Character.MAX_VALUE; c++) {
+            char lower = Character.toLowerCase((char) c);
+            if (lower < 0x80)
+                LOWER_OF_NON_ASCII[lower] = true;
+        }
+    }
+
+    private final File directory;
+    private final Executor executor;
+    private final int parallelism;
+    // mapped texts by book id, the least recently used ones are evicted
+    private final Cache<Integer, ByteBuffer> texts;
+    private final ThreadLocal<Scan> scans = ThreadLocal.withInitial(Scan::new);
+
+    /**
+     * @param directory directory of the texts of the books
+     * @param executor executor running the scans
+     * @param parallelism number of tasks of a search
+     * @param maxMappedTexts maximal number of texts kept mapped
+     */
+    public BookTextScanner(File directory, Executor executor, int parallelism, int maxMappedTexts) {
+        this.directory = directory;
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+        this.texts = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(1, maxMappedTexts))
+                .build();
+    }
+
+    /**
+     * search a regex in the texts of some books
+     * @param bookIds the ids of the books, in the order of the result
+     * @param matcher the matcher of the regex, in lower case
+     * @param literal a string contained in every match of the regex, in lower case, or an empty string
+     * @param limit the maximal number of books
+     * @return the ids of the first books whose text matches the regex, in order, or a future to cancel
+     * to stop the search
+     */
+    public CompletableFuture<int[]> find(int[] bookIds, RegExMatcher matcher, String literal, int limit) {
+        CompletableFuture<int[]> result = new CompletableFuture<>();
+        byte[] prefilter = asciiLowerCase(literal);
+        boolean[] matches = new boolean[bookIds.length];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger found = new AtomicInteger();
+        int tasks = Math.min(parallelism, Math.max(1, bookIds.length));
+        AtomicInteger running = new AtomicInteger(tasks);
+        Runnable task = () -> {
+            try {
+                Scan scan = scans.get();
+                RegExMatcher.Cursor cursor = matcher.cursor();
+                int i;
+                while (!result.isDone() && found.get() < limit && (i = next.getAndIncrement()) < bookIds.length) {
+                    ByteBuffer text = getText(bookIds[i]);
+                    if (text != null && scan.matches(text, cursor, prefilter)) {
+                        matches[i] = true;
+                        found.incrementAndGet();
+                    }
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                // the last task collects the matches of all the tasks
+                if (running.decrementAndGet() == 0)
+                    result.complete(collect(bookIds, matches, limit));
+            }
+        };
+        for (int t = 0; t < tasks; t++) {
+            executor.execute(task);
+        }
+        return result;
+    }
+
+    private static int[] collect(int[] bookIds, boolean[] matches, int limit) {
+        int[] ids = new int[16];
+        int count = 0;
+        for (int i = 0; i < bookIds.length && count < limit; i++) {
+            if (matches[i]) {
+                if (count == ids.length)
+                    ids = Arrays.copyOf(ids, count * 2);
+                ids[count++] = bookIds[i];
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * @return the mapped text of a book, null if it can't be read
+     */
+    private ByteBuffer getText(int bookId) {
+        try {
+            // a failure is not cached, the text is read again by the next search
+            return texts.get(bookId, () -> map(new File(directory, bookId + ".txt")));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            log.warn("Can't read the text of the book " + bookId + ": " + e.getCause());
+            return null;
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            // the mapping stays valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * @param literal a string in lower case
+     * @return the bytes of the longest run of ASCII chars of the string, in lower case, without the ones
+     * a non ASCII char of a text could match
+     */
+    private static byte[] asciiLowerCase(String literal) {
+        String longest = "";
+        int start = 0;
+        for (int i = 0; i <= literal.length(); i++) {
+            if (i == literal.length() || literal.charAt(i) >= 0x80 || LOWER_OF_NON_ASCII[literal.charAt(i)]) {
+                if (i - start > longest.length())
+                    longest = literal.substring(start, i);
+                start = i + 1;
+            }
+        }
+        return longest.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return the byte in lower case if it is an ASCII upper case letter
+     */
+    private static int toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? b | 0x20 : b;
+    }
+
+    /**
+     * @return true if the bytes of the text contain the literal, ignoring the case of ASCII letters
+     */
+    private static boolean contains(ByteBuffer text, byte[] literal) {
+        if (literal.length == 0)
+            return true;
+        int last = text.limit() - literal.length;
+        byte first = literal[0];
+        for (int i = 0; i <= last; i++) {
+            if (toLowerCase(text.get(i)) != first)
+                continue;
+            int k = 1;
+            while (k < literal.length && toLowerCase(text.get(i + k)) == literal[k])
+                k++;
+            if (k == literal.length)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * the decoder and the block of chars of a thread, reused for all its books and all the searches
+     */
+    private static class Scan {
+        private static final int BLOCK_SIZE = 1 << 16;
+
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer block = CharBuffer.allocate(BLOCK_SIZE);
+
+        /**
+         * decode the text by blocks, each one matched (in lower case) after the previous ones,
+         * until a block matches or the text ends
+         */
+        private boolean matches(ByteBuffer text, RegExMatcher.Cursor cursor, byte[] prefilter) {
+            if (!contains(text, prefilter))
+                return false;
+            ByteBuffer bytes = text.duplicate();
+            decoder.reset();
+            cursor.reset();
+            char[] chars = block.array();
+            boolean decoded = false;
+            while (!decoded) {
+                // cast for the java 8 signature of Buffer.clear()
+                ((Buffer) block).clear();
+                // an overflow when the block is full, an underflow once all the bytes are decoded
+                if (decoder.decode(bytes, block, true).isUnderflow()) {
+                    decoder.flush(block);
+                    decoded = true;
+                }
+                int end = block.position();
+                for (int i = 0; i < end; i++) {
+                    chars[i] = Character.toLowerCase(chars[i]);
+                }
+                if (cursor.find(chars, 0, end))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
@@ -1,159 +1,329 @@
 package com.sorbonne.book_search_engine.algorithms.regex;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Wenzhuo Zhao on 02/10/2021.
  * Deterministic finite automaton
  * Modified by Chengyu Yang
+ *
+ * The input chars are grouped in classes of chars having the same transitions: each char of the regex
+ * has its own class, and the class 0 gathers all the other chars of the 256 ASCII chars (only matched by ".").
+ * States are numbered from the start state 0, and the transition of a state by a class is -1 when there is none.
+ * The start state is never accepting: a regex matches a non-empty string.
  */
 public class DFA {
-    // relatively, root is the start state of an automate,
-    // end is the accepting state of an automate
-    private final DFAState root;
+    // 256 ASCII chars
+    private static final int COL = 256;
 
-    private final Set<DFAState> acceptings;
+    private final int[] classOf;
+    private final int classCount;
+    private final int[] transitions;
+    private final boolean[] accepting;
 
-    static Set<DFAState> allDFAStates = new HashSet<>();
+    private DFA(int[] classOf, int classCount, int[] transitions, boolean[] accepting) {
+        this.classOf = classOf;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepting = accepting;
+    }
 
-    public DFA(DFAState root, Set<DFAState> acceptings) {
-        this.root = root;
-        this.acceptings = acceptings;
+    /**
+     * @return the number of states
+     */
+    public int size() {
+        return accepting.length;
     }
 
-    public DFAState getRoot() {
-        return root;
+    /**
+     * @return the class of each of the 256 ASCII chars
+     */
+    public int[] getClassOf() {
+        return classOf;
     }
 
-    public Set<DFAState> getAcceptings() {
-        return acceptings;
+    /**
+     * @return the number of classes of chars
+     */
+    public int getClassCount() {
+        return classCount;
     }
 
     /**
-     * from NFA to DFA
+     * @param state a state
+     * @param charClass a class of chars
+     * @return the next state, -1 if there is none
+     */
+    public int getTransition(int state, int charClass) {
+        return transitions[state * classCount + charClass];
+    }
+
+    public boolean isAccepting(int state) {
+        return accepting[state];
+    }
+
+    /**
+     * from NFA to DFA: subset construction over the classes of chars, then Hopcroft's minimization
      *
      * @param nfa a NFA
-     * @return a DFA, without epsilon transition
+     * @param compiler the compilation counting the states
+     * @return a minimal DFA, without epsilon transition
      */
-    public static DFA fromNFAtoDFA(NFA nfa) {
-        Set<Integer> inputSymbols = nfa.getInputSymbols();
-        NFAState root = nfa.getRoot();
-        NFAState accepting = nfa.getAccepting();
-
-        DFAState start = new DFAState(root.epsilonClosure());
-        Set<DFAState> accepts = new HashSet<>();
-
-        // use HashSet to add only new DFAStates
-        //Set<DFAState> allDFAStates = new HashSet<>();
-        allDFAStates.add(start);
-
-        Queue<DFAState> queue = new LinkedList<>();
-        queue.offer(start);
-
-        while (!queue.isEmpty()) {
-            DFAState current = queue.poll();
-            for (Integer input : inputSymbols) {
-                Set<NFAState> set = getNextSubStates(current, input);
-                if (!set.isEmpty()) {
-                    DFAState next = new DFAState(set);
-                    if (!allDFAStates.add(next)) {
-                        for (DFAState same : allDFAStates) {
-                            if (same.equals(next)) {
-                                // cycle transition
-                                current.addTransition(input, same);
-                                break;
-                            }
-                        }
-                        DFAState.counter--;
-                    } else {
-                        // check if the `next` DFAState is an accepting state
-                        // which means it contains the accepting NFAState of the NFA
-                        if (next.getSubset().contains(accepting)) {
-                            accepts.add(next);
-                        }
-                        queue.offer(next);
-                        current.addTransition(input, next);
-                    }
+    public static DFA fromNFAtoDFA(NFA nfa, RegExCompiler compiler) {
+        return fromNFAtoDFA(NFATable.of(nfa, compiler), compiler);
+    }
+
+    /**
+     * @param nfa a NFA in arrays
+     * @param compiler the compilation counting the states
+     * @return a minimal DFA, without epsilon transition
+     */
+    static DFA fromNFAtoDFA(NFATable nfa, RegExCompiler compiler) {
+        int classCount = nfa.classCount;
+        // subset construction, the DFA states being sets of NFA state ids
+        Map<BitSet, Integer> ids = new HashMap<>();
+        List<BitSet> subsets = new ArrayList<>();
+        BitSet start = nfa.closures[nfa.root];
+        compiler.addDFAState();
+        ids.put(start, 0);
+        subsets.add(start);
+        int[] transitions = new int[classCount * 16];
+        BitSet[] nexts = new BitSet[classCount];
+        for (int s = 0; s < subsets.size(); s++) {
+            if (transitions.length < (s + 1) * classCount)
+                transitions = Arrays.copyOf(transitions, transitions.length * 2);
+            BitSet subset = subsets.get(s);
+            for (int c = 0; c < classCount; c++) {
+                nexts[c] = new BitSet(nfa.size);
+            }
+            for (int i = subset.nextSetBit(0); i >= 0; i = subset.nextSetBit(i + 1)) {
+                for (int t = nfa.offsets[i]; t < nfa.offsets[i + 1]; t++) {
+                    nexts[nfa.classes[t]].or(nfa.closures[nfa.targets[t]]);
                 }
             }
-        }
-        // Minimize DFA
-        // divide the state in 2 parts
-        // one for all ends and one for the others
-        Queue<Set<DFAState>> worklist = new LinkedList<>();
-        Set<DFAState> union1 = new HashSet<>();
-        for (DFAState state : allDFAStates) {
-            if (!accepts.contains(state)) {
-                union1.add(state);
+            for (int c = 0; c < classCount; c++) {
+                BitSet next = nexts[c];
+                if (next.isEmpty()) {
+                    transitions[s * classCount + c] = -1;
+                    continue;
+                }
+                Integer id = ids.get(next);
+                if (id == null) {
+                    compiler.addDFAState();
+                    id = subsets.size();
+                    ids.put(next, id);
+                    subsets.add(next);
+                }
+                transitions[s * classCount + c] = id;
             }
         }
-        // add two parts in worklist
-        worklist.add(union1);
-        worklist.add(accepts);
-        while (!worklist.isEmpty()) {
-            Set<DFAState> current = worklist.poll();
-            // find if their next step still in the union
-            Set<DFAState> union2 = new HashSet<>();
-            for (Integer input : inputSymbols) {
-
-                Set<DFAState> in_union = new HashSet<>(current);
-                // once found, divide the union
-                Set<DFAState> tmp = new HashSet<>();
-                for (DFAState st : current) {
-                    if (!in_union.contains(st.getTransition(input))) {
-                        union2.add(st);
-                        tmp.add(st);
-                    }
+        boolean[] accepting = new boolean[subsets.size()];
+        // the start state stays non-accepting, so the empty string is not a match
+        for (int s = 1; s < subsets.size(); s++) {
+            accepting[s] = subsets.get(s).get(nfa.accepting);
+        }
+
+        return minimize(nfa.classOf, classCount, Arrays.copyOf(transitions, subsets.size() * classCount), accepting);
+    }
+
+    /**
+     * Hopcroft's minimization: the states are split in blocks, accepting and non-accepting ones,
+     * and a block is split while some of its states go into a splitter block by a class and some don't.
+     * Each split adds the smaller part to the splitters, so a state is in at most log(n) splitters.
+     * The missing transitions go to a dead state, removed again from the minimal DFA with the other dead states.
+     */
+    private static DFA minimize(int[] classOf, int classCount, int[] transitions, boolean[] accepting) {
+        int n = accepting.length + 1;
+        int dead = n - 1;
+        int[] complete = new int[n * classCount];
+        for (int i = 0; i < complete.length; i++) {
+            complete[i] = i < transitions.length && transitions[i] >= 0 ? transitions[i] : dead;
+        }
+
+        // predecessors of each (state, class), in compressed rows
+        int[] offsets = new int[n * classCount + 1];
+        for (int i = 0; i < complete.length; i++) {
+            offsets[complete[i] * classCount + i % classCount + 1]++;
+        }
+        for (int i = 0; i < n * classCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] predecessors = new int[complete.length];
+        int[] next = Arrays.copyOf(offsets, n * classCount);
+        for (int i = 0; i < complete.length; i++) {
+            predecessors[next[complete[i] * classCount + i % classCount]++] = i / classCount;
+        }
+
+        // partition: the states of the block b are elements[first[b]..end[b]), the marked ones at the beginning
+        int[] elements = new int[n];
+        int[] positions = new int[n];
+        int[] blockOf = new int[n];
+        int[] first = new int[n];
+        int[] end = new int[n];
+        int[] marked = new int[n];
+        int blocks = 0;
+        int count = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int from = count;
+            for (int s = 0; s < n; s++) {
+                if ((s < accepting.length && accepting[s]) == (pass == 0)) {
+                    positions[s] = count;
+                    elements[count++] = s;
+                    blockOf[s] = blocks;
                 }
-                current.removeAll(tmp);
             }
-            // add the union into worklist
-            if (union2.size() > 1) {
-                worklist.add(union2);
+            if (count > from) {
+                first[blocks] = from;
+                end[blocks++] = count;
             }
+        }
 
-            // now for all state in current
-            // their next step is in the union
-            // so we can consider they are the same state
-
-            if (current.size() < 2) {
-                break;
-            }
-            // change the transitions for each state
-            for (DFAState state : allDFAStates) {
-                for (Integer input : inputSymbols) {
-                    DFAState next = state.getTransitions().get(input);
-                    if (next == null)
+        int[] splitters = new int[n];
+        int nSplitters = 0;
+        for (int b = 0; b < blocks; b++) {
+            splitters[nSplitters++] = b;
+        }
+        int[] splitter = new int[n];
+        int[] touched = new int[n];
+        while (nSplitters > 0) {
+            int b = splitters[--nSplitters];
+            int size = end[b] - first[b];
+            System.arraycopy(elements, first[b], splitter, 0, size);
+            for (int c = 0; c < classCount; c++) {
+                int nTouched = 0;
+                for (int k = 0; k < size; k++) {
+                    int target = splitter[k] * classCount + c;
+                    for (int p = offsets[target]; p < offsets[target + 1]; p++) {
+                        int s = predecessors[p];
+                        int block = blockOf[s];
+                        int position = first[block] + marked[block];
+                        if (positions[s] < position)
+                            continue;
+                        // swap s with the first unmarked state of its block
+                        int other = elements[position];
+                        elements[positions[s]] = other;
+                        positions[other] = positions[s];
+                        elements[position] = s;
+                        positions[s] = position;
+                        if (marked[block]++ == 0)
+                            touched[nTouched++] = block;
+                    }
+                }
+                for (int t = 0; t < nTouched; t++) {
+                    int block = touched[t];
+                    int m = marked[block];
+                    marked[block] = 0;
+                    int blockSize = end[block] - first[block];
+                    if (m == blockSize)
                         continue;
-                    if (current.contains(next)) {
-                        state.getTransitions().remove(input);
-                        Set<DFAState> copy = new HashSet<>(current);
-                        copy.remove(next);
-                        state.getTransitions().put(input, copy.iterator().next());
+                    // the smaller part becomes a new block, and a splitter: whether the block was already a splitter
+                    // or not, splitting by the smaller part is enough
+                    int newBlock = blocks++;
+                    if (m <= blockSize - m) {
+                        first[newBlock] = first[block];
+                        end[newBlock] = first[block] + m;
+                        first[block] += m;
+                    } else {
+                        first[newBlock] = first[block] + m;
+                        end[newBlock] = end[block];
+                        end[block] = first[block] + m;
                     }
+                    for (int i = first[newBlock]; i < end[newBlock]; i++) {
+                        blockOf[elements[i]] = newBlock;
+                    }
+                    splitters[nSplitters++] = newBlock;
                 }
             }
-
         }
 
-        return new DFA(start, accepts);
-    }
-
-    private static Set<NFAState> getNextSubStates(DFAState state, int input) {
-        Set<NFAState> subset = new HashSet<>();
-        Set<NFAState> tmp = NFAState.move(input, state.getSubset());
-        for (NFAState nfaState : tmp) {
-            subset.addAll(nfaState.epsilonClosure());
+        // live blocks: an accepting block is reachable from them
+        boolean[] live = new boolean[blocks];
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int s = 0; s < accepting.length; s++) {
+            if (accepting[s] && !live[blockOf[s]]) {
+                live[blockOf[s]] = true;
+                for (int i = first[blockOf[s]]; i < end[blockOf[s]]; i++) {
+                    queue[tail++] = elements[i];
+                }
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int s = queue[head];
+            for (int c = 0; c < classCount; c++) {
+                int target = s * classCount + c;
+                for (int p = offsets[target]; p < offsets[target + 1]; p++) {
+                    int block = blockOf[predecessors[p]];
+                    if (!live[block]) {
+                        live[block] = true;
+                        for (int i = first[block]; i < end[block]; i++) {
+                            queue[tail++] = elements[i];
+                        }
+                    }
+                }
+            }
         }
 
-        return subset;
+        // number the live blocks reachable from the start in breadth-first order
+        int[] newIds = new int[blocks];
+        Arrays.fill(newIds, -1);
+        int[] representatives = new int[blocks];
+        int states = 0;
+        newIds[blockOf[0]] = states;
+        representatives[states++] = 0;
+        int[] minimal = new int[blocks * classCount];
+        boolean[] minimalAccepting = new boolean[blocks];
+        for (int s = 0; s < states; s++) {
+            int representative = representatives[s];
+            minimalAccepting[s] = representative < accepting.length && accepting[representative];
+            for (int c = 0; c < classCount; c++) {
+                int target = complete[representative * classCount + c];
+                int block = blockOf[target];
+                if (!live[block]) {
+                    minimal[s * classCount + c] = -1;
+                    continue;
+                }
+                if (newIds[block] < 0) {
+                    newIds[block] = states;
+                    representatives[states++] = target;
+                }
+                minimal[s * classCount + c] = newIds[block];
+            }
+        }
+        return new DFA(classOf, classCount, Arrays.copyOf(minimal, states * classCount),
+                Arrays.copyOf(minimalAccepting, states));
     }
 
     @Override
     public String toString() {
-        return root.toString();
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < size(); s++) {
+            for (int c = 0; c < classCount; c++) {
+                int next = getTransition(s, c);
+                if (next < 0)
+                    continue;
+                sb.append(s).append(" -- ").append(c == 0 ? "." : label(c)).append(" --> ").append(next);
+                if (accepting[next])
+                    sb.append(" (accepting)");
+                sb.append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the char of a class other than 0
+     */
+    private String label(int charClass) {
+        for (int i = 0; i < COL; i++) {
+            if (classOf[i] == charClass)
+                return Character.toString((char) i);
+        }
+        return "?";
     }
 }
@@ -0,0 +1,223 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+import com.sorbonne.book_search_engine.algorithms.index.TermTrie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A DFA compiled into a dense transition table, searching the regex anywhere in a text (unanchored).
+ * The table is the DFA of ".*regex": each of its states is a set of states of the original DFA,
+ * always containing the start since a match can start at any position.
+ * Columns are the classes of chars of the DFA: row s holds the next states of the state s by each class,
+ * accepting[s] tells if a match ends there.
+ * Chars outside of the 256 ASCII chars have no transition in the original DFA: they go back to the start.
+ */
+public class DFATable implements RegExMatcher {
+    private static final int COL = 256;
+
+    private final int[] classOf;
+    private final int classCount;
+    private final int[] table;
+    private final boolean[] accepting;
+    // minimal number of chars from each state to an accepting state, Integer.MAX_VALUE if there is none
+    private final int[] distances;
+
+    private DFATable(int[] classOf, int classCount, int[] table, boolean[] accepting) {
+        this.classOf = classOf;
+        this.classCount = classCount;
+        this.table = table;
+        this.accepting = accepting;
+        this.distances = distancesToAccepting(table, classCount, accepting);
+    }
+
+    /**
+     * compile a DFA into the table of its unanchored version
+     * @param dfa a DFA
+     * @param compiler the compilation counting the states
+     * @return the transition table
+     */
+    public static DFATable compile(DFA dfa, RegExCompiler compiler) {
+        int k = dfa.getClassCount();
+        int n = dfa.size();
+        // subset construction over the states of the DFA, the start being added at each position
+        Map<BitSet, Integer> subsetIds = new HashMap<>();
+        List<BitSet> subsets = new ArrayList<>();
+        BitSet start = new BitSet(n);
+        start.set(0);
+        subsetIds.put(start, 0);
+        subsets.add(start);
+        int[] table = new int[k * 16];
+        for (int s = 0; s < subsets.size(); s++) {
+            if (table.length < (s + 1) * k)
+                table = Arrays.copyOf(table, table.length * 2);
+            BitSet subset = subsets.get(s);
+            for (int c = 0; c < k; c++) {
+                BitSet next = new BitSet(n);
+                next.set(0);
+                for (int i = subset.nextSetBit(0); i >= 0; i = subset.nextSetBit(i + 1)) {
+                    int target = dfa.getTransition(i, c);
+                    if (target >= 0)
+                        next.set(target);
+                }
+                Integer id = subsetIds.get(next);
+                if (id == null) {
+                    compiler.addDFAState();
+                    id = subsets.size();
+                    subsetIds.put(next, id);
+                    subsets.add(next);
+                }
+                table[s * k + c] = id;
+            }
+        }
+        boolean[] accepting = new boolean[subsets.size()];
+        for (int s = 0; s < subsets.size(); s++) {
+            BitSet subset = subsets.get(s);
+            for (int i = subset.nextSetBit(0); i >= 0 && !accepting[s]; i = subset.nextSetBit(i + 1)) {
+                accepting[s] = dfa.isAccepting(i);
+            }
+        }
+        return new DFATable(dfa.getClassOf(), k, Arrays.copyOf(table, subsets.size() * k), accepting);
+    }
+
+    /**
+     * breadth-first search from the accepting states, on the reversed transitions
+     */
+    private static int[] distancesToAccepting(int[] table, int classCount, boolean[] accepting) {
+        int n = accepting.length;
+        // predecessors of each state, in compressed rows
+        int[] offsets = new int[n + 1];
+        for (int target : table) {
+            offsets[target + 1]++;
+        }
+        for (int s = 0; s < n; s++) {
+            offsets[s + 1] += offsets[s];
+        }
+        int[] predecessors = new int[table.length];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (int i = 0; i < table.length; i++) {
+            predecessors[next[table[i]]++] = i / classCount;
+        }
+        int[] distances = new int[n];
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int s = 0; s < n; s++) {
+            if (accepting[s]) {
+                distances[s] = 0;
+                queue[tail++] = s;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int s = queue[head];
+            for (int p = offsets[s]; p < offsets[s + 1]; p++) {
+                int predecessor = predecessors[p];
+                if (distances[predecessor] == Integer.MAX_VALUE) {
+                    distances[predecessor] = distances[s] + 1;
+                    queue[tail++] = predecessor;
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * @return the number of states of the table
+     */
+    public int size() {
+        return accepting.length;
+    }
+
+    @Override
+    public int getMemorySize() {
+        return 16 + 4 * (classOf.length + table.length + distances.length) + accepting.length;
+    }
+
+    /**
+     * one pass over the chars of a text, without allocation
+     */
+    @Override
+    public boolean find(CharSequence text) {
+        int state = 0;
+        if (accepting[state])
+            return true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            state = c < COL ? table[state * classCount + classOf[c]] : 0;
+            if (accepting[state])
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new TableCursor();
+    }
+
+    /**
+     * the state of the table reached by the text read so far
+     */
+    private class TableCursor implements Cursor {
+        private int state = 0;
+
+        @Override
+        public boolean find(char[] chars, int start, int end) {
+            int state = this.state;
+            for (int i = start; i < end && !accepting[state]; i++) {
+                char c = chars[i];
+                state = c < COL ? table[state * classCount + classOf[c]] : 0;
+            }
+            this.state = state;
+            return accepting[state];
+        }
+
+        @Override
+        public void reset() {
+            state = 0;
+        }
+    }
+
+    /**
+     * walk the table and the trie of a dictionary together: a node whose prefix matches brings all its terms,
+     * a node whose longest suffix is shorter than the distance of its state to an accepting state is skipped
+     */
+    @Override
+    public int[] findAll(TermTrie trie) {
+        int[] termIds = new int[16];
+        int count = 0;
+        // state reached by the prefix of each depth of the current branch
+        int[] states = new int[16];
+        int node = TermTrie.ROOT;
+        while (node < trie.size()) {
+            int depth = trie.getDepth(node);
+            int state = 0;
+            if (depth > 0) {
+                char c = trie.getLabel(node);
+                state = c < COL ? table[states[depth - 1] * classCount + classOf[c]] : 0;
+            }
+            if (accepting[state]) {
+                int from = trie.getFrom(node);
+                int to = trie.getTo(node);
+                if (count + to - from > termIds.length)
+                    termIds = Arrays.copyOf(termIds, Math.max(termIds.length * 2, count + to - from));
+                for (int termId = from; termId < to; termId++) {
+                    termIds[count++] = termId;
+                }
+                node = trie.getEnd(node);
+            } else if (distances[state] > trie.getHeight(node)) {
+                node = trie.getEnd(node);
+            } else {
+                if (depth == states.length)
+                    states = Arrays.copyOf(states, depth * 2);
+                states[depth] = state;
+                node++;
+            }
+        }
+        return Arrays.copyOf(termIds, count);
+    }
+}
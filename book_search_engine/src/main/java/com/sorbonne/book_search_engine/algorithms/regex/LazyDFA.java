@@ -0,0 +1,229 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+import com.sorbonne.book_search_engine.algorithms.index.TermTrie;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The unanchored DFA of a regex built on the fly: a state is a set of NFA states, always containing the root
+ * since a match can start at any position, and it is created the first time a text reaches it.
+ * The created states and their transitions are kept for the next texts, up to maxStates states:
+ * beyond it, the next sets of NFA states are still computed (NFA simulation) but not kept.
+ * Used when the complete DFA is too large, e.g. for "(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)".
+ * Scans take no lock: the kept states are in a concurrent map, so two scans creating the same state
+ * keep only one of them, and a transition is stored once its target is kept.
+ * A state which is not kept is held by the scan itself, in sets reused at each char.
+ */
+public class LazyDFA implements RegExMatcher {
+    private final NFATable nfa;
+    private final int maxStates;
+    private final Map<BitSet, State> states = new ConcurrentHashMap<>();
+    private final AtomicInteger stateCount = new AtomicInteger();
+    private final State start;
+
+    /**
+     * a set of NFA states, with an extra bit when a match ends there
+     */
+    private static final class State {
+        private final BitSet subset;
+        private final boolean accepting;
+        // next state by class, null until computed, written by any scan: a kept state never changes
+        private final State[] nexts;
+
+        private State(BitSet subset, boolean accepting, State[] nexts) {
+            this.subset = subset;
+            this.accepting = accepting;
+            this.nexts = nexts;
+        }
+    }
+
+    /**
+     * where a scan is in the DFA: a kept state, or the NFA states of a state which is not kept,
+     * in a set owned by the scan
+     */
+    private static final class Position {
+        private State state;
+        private final BitSet subset = new BitSet();
+        private boolean accepting;
+
+        private void set(State state) {
+            this.state = state;
+            this.accepting = state.accepting;
+        }
+    }
+
+    LazyDFA(NFATable nfa, int maxStates) {
+        this.nfa = nfa;
+        this.maxStates = Math.max(1, maxStates);
+        // the start state stays non-accepting, so the empty string is not a match
+        BitSet subset = (BitSet) nfa.closures[nfa.root].clone();
+        this.start = new State(subset, false, new State[nfa.classCount]);
+        states.put(subset, start);
+        stateCount.set(1);
+    }
+
+    /**
+     * move a scan by a char
+     * @param from the position before the char
+     * @param c the char
+     * @param to the position after the char, another object than from
+     */
+    private void step(Position from, char c, Position to) {
+        if (c >= NFATable.COL) {
+            to.set(start);
+            return;
+        }
+        int charClass = nfa.classOf[c];
+        State state = from.state;
+        // read once: another scan may change the transition between two reads
+        State next = state != null ? state.nexts[charClass] : null;
+        if (next != null) {
+            to.set(next);
+            return;
+        }
+        BitSet subset = to.subset;
+        nfa.move(state != null ? state.subset : from.subset, charClass, subset);
+        boolean accepting = subset.get(nfa.accepting);
+        subset.or(nfa.closures[nfa.root]);
+        // the bit after the NFA states tells if the state is accepting, as the root may reach the accepting state
+        if (accepting)
+            subset.set(nfa.size);
+        next = states.get(subset);
+        if (next == null)
+            next = keep(subset, accepting);
+        if (next == null) {
+            to.state = null;
+            to.accepting = accepting;
+            return;
+        }
+        // the same target whichever scan stores it
+        if (state != null)
+            state.nexts[charClass] = next;
+        to.set(next);
+    }
+
+    /**
+     * @return the kept state of a set of NFA states, created if there are less than maxStates states,
+     * null otherwise
+     */
+    private State keep(BitSet subset, boolean accepting) {
+        int count;
+        do {
+            count = stateCount.get();
+            if (count >= maxStates)
+                return null;
+        } while (!stateCount.compareAndSet(count, count + 1));
+        State state = new State((BitSet) subset.clone(), accepting, new State[nfa.classCount]);
+        State kept = states.putIfAbsent(state.subset, state);
+        if (kept != null) {
+            // created by another scan meanwhile
+            stateCount.decrementAndGet();
+            return kept;
+        }
+        return state;
+    }
+
+    /**
+     * @return the number of states kept
+     */
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * @return the maximal size of the DFA in memory, in bytes, once all its states are kept
+     */
+    @Override
+    public int getMemorySize() {
+        long state = 64 + 4L * nfa.classCount + nfa.size / 8;
+        return (int) Math.min(Integer.MAX_VALUE, nfa.getMemorySize() + maxStates * state);
+    }
+
+    @Override
+    public boolean find(CharSequence text) {
+        Position position = new Position();
+        position.set(start);
+        Position next = new Position();
+        for (int i = 0; i < text.length(); i++) {
+            step(position, text.charAt(i), next);
+            if (next.accepting)
+                return true;
+            Position previous = position;
+            position = next;
+            next = previous;
+        }
+        return false;
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new LazyCursor();
+    }
+
+    /**
+     * the position reached by the text read so far
+     */
+    private class LazyCursor implements Cursor {
+        private Position position = new Position();
+        private Position next = new Position();
+
+        private LazyCursor() {
+            position.set(LazyDFA.this.start);
+        }
+
+        @Override
+        public boolean find(char[] chars, int start, int end) {
+            for (int i = start; i < end && !position.accepting; i++) {
+                step(position, chars[i], next);
+                Position previous = position;
+                position = next;
+                next = previous;
+            }
+            return position.accepting;
+        }
+
+        @Override
+        public void reset() {
+            position.set(LazyDFA.this.start);
+        }
+    }
+
+    /**
+     * walk the DFA and the trie of a dictionary together: a node whose prefix matches brings all its terms
+     */
+    @Override
+    public int[] findAll(TermTrie trie) {
+        int[] termIds = new int[16];
+        int count = 0;
+        // position reached by the prefix of each depth of the current branch
+        Position[] branch = new Position[16];
+        branch[0] = new Position();
+        branch[0].set(start);
+        int node = TermTrie.ROOT + 1;
+        while (node < trie.size()) {
+            int depth = trie.getDepth(node);
+            if (depth == branch.length)
+                branch = Arrays.copyOf(branch, depth * 2);
+            if (branch[depth] == null)
+                branch[depth] = new Position();
+            step(branch[depth - 1], trie.getLabel(node), branch[depth]);
+            if (branch[depth].accepting) {
+                int from = trie.getFrom(node);
+                int to = trie.getTo(node);
+                if (count + to - from > termIds.length)
+                    termIds = Arrays.copyOf(termIds, Math.max(termIds.length * 2, count + to - from));
+                for (int termId = from; termId < to; termId++) {
+                    termIds[count++] = termId;
+                }
+                node = trie.getEnd(node);
+            } else {
+                node++;
+            }
+        }
+        return Arrays.copyOf(termIds, count);
+    }
+}
@@ -8,9 +8,6 @@ import java.util.Set;
  * Nondeterministic finite automaton
  */
 public class NFA {
-    // 256 ASCII chars
-    private final static int COL = 256;
-
     // relatively, root is the start state of an automate,
     // end is the accepting state of an automate
     private final NFAState root;
@@ -31,29 +28,27 @@ public class NFA {
         return accepting;
     }
 
-    public static NFA fromRegExTreeToNFA(RegExTree ret){
+    /**
+     * Thompson construction of the NFA of a syntax tree
+     * @param ret the syntax tree of a regex
+     * @param compiler the compilation creating the states
+     * @return a NFA
+     */
+    public static NFA fromRegExTreeToNFA(RegExTree ret, RegExCompiler compiler){
         if(ret.subTrees.isEmpty()){
-            NFAState start_state = new NFAState();
-            NFAState final_state = new NFAState();
+            NFAState start_state = compiler.newNFAState();
+            NFAState final_state = compiler.newNFAState();
             Set<Integer> inputSymbols = new HashSet<>();
-            if (ret.root != NodeEnum.DOT){
-                // only 1 transition
-                start_state.addTransition(ret.root, final_state);
-                inputSymbols.add(ret.root);
-            }else {
-                for (int i = 0; i < COL; i++) {
-                    // all the 256 transitions
-                    start_state.addTransition(i, final_state);
-                    inputSymbols.add(i);
-                }
-            }
+            // 1 transition, "." being a single transition by any char
+            start_state.addTransition(ret.root, final_state);
+            inputSymbols.add(ret.root);
             return new NFA(start_state, final_state, inputSymbols);
         }
 
         if(ret.root == NodeEnum.CONCAT){
             // from left's end to right's start
-            NFA left = fromRegExTreeToNFA(ret.subTrees.get(0));
-            NFA right = fromRegExTreeToNFA(ret.subTrees.get(1));
+            NFA left = fromRegExTreeToNFA(ret.subTrees.get(0), compiler);
+            NFA right = fromRegExTreeToNFA(ret.subTrees.get(1), compiler);
             left.accepting.addTransition(right.root);
             Set<Integer> inputSymbols = new HashSet<>();
             inputSymbols.addAll(left.inputSymbols);
@@ -64,15 +59,15 @@ public class NFA {
         if (ret.root == NodeEnum.ALTERN){
             // from a new state to left's start and right's start
             // and connect the ends of left and right to end state
-            NFAState start_state = new NFAState();
-            NFA left = fromRegExTreeToNFA(ret.subTrees.get(0));
-            NFA right = fromRegExTreeToNFA(ret.subTrees.get(1));
+            NFAState start_state = compiler.newNFAState();
+            NFA left = fromRegExTreeToNFA(ret.subTrees.get(0), compiler);
+            NFA right = fromRegExTreeToNFA(ret.subTrees.get(1), compiler);
 
             Set<Integer> inputSymbols = new HashSet<>();
             inputSymbols.addAll(left.inputSymbols);
             inputSymbols.addAll(right.inputSymbols);
 
-            NFAState end_state = new NFAState();
+            NFAState end_state = compiler.newNFAState();
 
             start_state.addTransition(left.root);
             start_state.addTransition(right.root);
@@ -84,9 +79,9 @@ public class NFA {
 
         if (ret.root == NodeEnum.ETOILE){
             // see fig 10.31:
-            NFAState start_state = new NFAState();
-            NFA left = fromRegExTreeToNFA(ret.subTrees.get(0));
-            NFAState end_state = new NFAState();
+            NFAState start_state = compiler.newNFAState();
+            NFA left = fromRegExTreeToNFA(ret.subTrees.get(0), compiler);
+            NFAState end_state = compiler.newNFAState();
 
             start_state.addTransition(left.root);
             start_state.addTransition(end_state);
@@ -98,7 +93,7 @@ public class NFA {
             return new NFA(start_state, end_state, inputSymbols);
         }
 
-        return new NFA(new NFAState(), new NFAState(), new HashSet<>());
+        return new NFA(compiler.newNFAState(), compiler.newNFAState(), new HashSet<>());
     }
 
     public Set<Integer> getInputSymbols(){
@@ -6,8 +6,6 @@ import java.util.*;
  * Created by Wenzhuo Zhao on 28/09/2021.
  */
 public class NFAState {
-    public static int counter = 0;
-
     private final int id;
 
     // input symbols and next states
@@ -16,8 +14,11 @@ public class NFAState {
     // non input symbol (epsilon), only next states
     private final Set<NFAState> epsilonTransitions;
 
-    public NFAState(){
-        id = counter++;
+    /**
+     * @param id id of the state, unique in its automaton, given by {@link RegExCompiler}
+     */
+    NFAState(int id){
+        this.id = id;
         transitions = new HashMap<>();
         epsilonTransitions = new HashSet<>();
     }
@@ -64,50 +65,6 @@ public class NFAState {
         return this.transitions.get(input);
     }
 
-    private Set<NFAState> search(int input){
-        NFAState stateViaInput = this.getTransition(input);
-        if (stateViaInput == null)
-            return new HashSet<>();
-
-        Set<NFAState> res = new HashSet<>();
-        res.add(stateViaInput);
-        res.addAll(stateViaInput.search(input));
-
-        return res;
-    }
-
-    /**
-     * from a set of NFAStates, move via the input, get a new set of NFAStates
-     * the subset makes a new DFAState
-     * @param input an input symbol in all the 256 ascii char
-     * @return a subset of NFAStates
-     */
-    public static Set<NFAState> move(int input, Set<NFAState> dfa){
-        Set<NFAState> subset = new HashSet<>();
-
-        for(NFAState nfaState : dfa){
-            subset.addAll(nfaState.search(input));
-        }
-        return subset;
-    }
-
-    /**
-     * a set of NFAStates, which departing from `this` NFAState, does a Kleene Closure of epsilon, can get
-     * @return a set of NFAStates
-     */
-    public Set<NFAState> epsilonClosure(){
-        Set<NFAState> res = new HashSet<>(this.epsilonTransitions);
-        // you can't operate res while iterating res -- ConcurrentModificationException
-        // so use a tmp variable
-        Set<NFAState> tmp = new HashSet<>();
-        for (NFAState next: res) {
-            tmp.addAll(next.epsilonClosure());
-        }
-        res.add(this);
-        res.addAll(tmp);
-        return res;
-    }
-
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
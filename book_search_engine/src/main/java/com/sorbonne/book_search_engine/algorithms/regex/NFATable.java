@@ -0,0 +1,192 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A NFA flattened into arrays, the input of the subset constructions of {@link DFA} and {@link LazyDFA}.
+ * The input chars are grouped in classes of chars having the same transitions: each char of the regex
+ * has its own class, and the class 0 gathers all the other chars of the 256 ASCII chars (only matched by ".").
+ * The transitions of the NFA state i are targets[offsets[i]..offsets[i + 1]), by the classes at the same positions,
+ * and closures[t] is the epsilon closure of each target t and of the root.
+ */
+final class NFATable {
+    // 256 ASCII chars
+    static final int COL = 256;
+
+    final int[] classOf;
+    final int classCount;
+    final int size;
+    final int root;
+    final int accepting;
+    final int[] offsets;
+    final int[] classes;
+    final int[] targets;
+    final BitSet[] closures;
+
+    private NFATable(int[] classOf, int classCount, int size, int root, int accepting,
+                     int[] offsets, int[] classes, int[] targets, BitSet[] closures) {
+        this.classOf = classOf;
+        this.classCount = classCount;
+        this.size = size;
+        this.root = root;
+        this.accepting = accepting;
+        this.offsets = offsets;
+        this.classes = classes;
+        this.targets = targets;
+        this.closures = closures;
+    }
+
+    /**
+     * @param nfa a NFA
+     * @param compiler the compilation which created the states of the NFA
+     * @return the NFA in arrays
+     */
+    static NFATable of(NFA nfa, RegExCompiler compiler) {
+        // the NFAStates by id
+        NFAState[] nfaStates = new NFAState[compiler.getNFAStateCount()];
+        List<NFAState> stack = new ArrayList<>();
+        stack.add(nfa.getRoot());
+        nfaStates[nfa.getRoot().getId()] = nfa.getRoot();
+        while (!stack.isEmpty()) {
+            NFAState state = stack.remove(stack.size() - 1);
+            List<NFAState> nexts = new ArrayList<>(state.getTransitions().values());
+            nexts.addAll(state.getEpsilonTransitions());
+            for (NFAState next : nexts) {
+                if (nfaStates[next.getId()] == null) {
+                    nfaStates[next.getId()] = next;
+                    stack.add(next);
+                }
+            }
+        }
+
+        // one class per char of the regex, the other chars in the class 0
+        int[] classOf = new int[COL];
+        int classCount = 1;
+        for (int input : new TreeSet<>(nfa.getInputSymbols())) {
+            if (input >= 0 && input < COL)
+                classOf[input] = classCount++;
+        }
+
+        // the transitions of the NFA states by class, in compressed rows: "." leads to the target by all the classes
+        int[] offsets = new int[nfaStates.length + 1];
+        int[] classes = new int[16];
+        int[] targets = new int[16];
+        int count = 0;
+        for (int i = 0; i < nfaStates.length; i++) {
+            if (nfaStates[i] != null) {
+                for (Map.Entry<Integer, NFAState> transition : nfaStates[i].getTransitions().entrySet()) {
+                    int input = transition.getKey();
+                    // no transition by the chars outside of the 256 ASCII chars
+                    if (input != NodeEnum.DOT && input >= COL)
+                        continue;
+                    int from = input == NodeEnum.DOT ? 0 : classOf[input];
+                    int to = input == NodeEnum.DOT ? classCount : from + 1;
+                    for (int c = from; c < to; c++) {
+                        if (count == classes.length) {
+                            classes = Arrays.copyOf(classes, count * 2);
+                            targets = Arrays.copyOf(targets, count * 2);
+                        }
+                        classes[count] = c;
+                        targets[count++] = transition.getValue().getId();
+                    }
+                }
+            }
+            offsets[i + 1] = count;
+        }
+
+        int[] sources = Arrays.copyOf(targets, count + 1);
+        sources[count] = nfa.getRoot().getId();
+        return new NFATable(classOf, classCount, nfaStates.length, nfa.getRoot().getId(), nfa.getAccepting().getId(),
+                offsets, Arrays.copyOf(classes, count), Arrays.copyOf(targets, count),
+                epsilonClosures(nfaStates, sources));
+    }
+
+    /**
+     * @param subset ids of NFA states
+     * @param charClass a class of chars
+     * @return the NFA states reached from the subset by a char of the class, with their epsilon closures
+     */
+    BitSet move(BitSet subset, int charClass) {
+        BitSet next = new BitSet(size);
+        move(subset, charClass, next);
+        return next;
+    }
+
+    /**
+     * same as move(subset, charClass), into an existing set, without allocation
+     * @param subset ids of NFA states, the bits from size are ignored
+     * @param charClass a class of chars
+     * @param next the set receiving the NFA states reached, cleared first
+     */
+    void move(BitSet subset, int charClass, BitSet next) {
+        next.clear();
+        for (int i = subset.nextSetBit(0); i >= 0 && i < size; i = subset.nextSetBit(i + 1)) {
+            for (int t = offsets[i]; t < offsets[i + 1]; t++) {
+                if (classes[t] == charClass)
+                    next.or(closures[targets[t]]);
+            }
+        }
+    }
+
+    /**
+     * @return the approximate size of the arrays in memory, in bytes
+     */
+    int getMemorySize() {
+        int closureWords = 0;
+        for (BitSet closure : closures) {
+            if (closure != null)
+                closureWords += closure.size() / 64;
+        }
+        return 4 * (classOf.length + offsets.length + classes.length + targets.length + closures.length)
+                + 8 * closureWords;
+    }
+
+    /**
+     * @param nfaStates the NFA states by id
+     * @param sources ids of NFA states
+     * @return the epsilon closure of each source, itself included, null for the other NFA states
+     */
+    private static BitSet[] epsilonClosures(NFAState[] nfaStates, int[] sources) {
+        // epsilon transitions in compressed rows
+        int[] offsets = new int[nfaStates.length + 1];
+        for (int i = 0; i < nfaStates.length; i++) {
+            offsets[i + 1] = offsets[i] + (nfaStates[i] == null ? 0 : nfaStates[i].getEpsilonTransitions().size());
+        }
+        int[] epsilons = new int[offsets[nfaStates.length]];
+        for (int i = 0; i < nfaStates.length; i++) {
+            if (nfaStates[i] == null)
+                continue;
+            int k = offsets[i];
+            for (NFAState next : nfaStates[i].getEpsilonTransitions()) {
+                epsilons[k++] = next.getId();
+            }
+        }
+
+        BitSet[] closures = new BitSet[nfaStates.length];
+        int[] stack = new int[nfaStates.length];
+        for (int source : sources) {
+            if (closures[source] != null)
+                continue;
+            BitSet closure = new BitSet(nfaStates.length);
+            closure.set(source);
+            int top = 0;
+            stack[top++] = source;
+            while (top > 0) {
+                int state = stack[--top];
+                for (int e = offsets[state]; e < offsets[state + 1]; e++) {
+                    if (!closure.get(epsilons[e])) {
+                        closure.set(epsilons[e]);
+                        stack[top++] = epsilons[e];
+                    }
+                }
+            }
+            closures[source] = closure;
+        }
+        return closures;
+    }
+}
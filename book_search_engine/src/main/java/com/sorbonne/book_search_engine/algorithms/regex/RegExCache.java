@@ -0,0 +1,148 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.sorbonne.book_search_engine.algorithms.index.PostingIndex;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The compiled regexes by pattern, so a pattern searched again (or in the content, the titles and the authors
+ * of the same request) is parsed and compiled only once,
+ * and the terms of each index matching a pattern, so a pattern searched again doesn't search the dictionary.
+ * The terms are cached by generation of the index: the terms of a rebuilt index are searched again,
+ * the ones of the old index are no longer used and get evicted.
+ * The least recently used entries of each cache are evicted when their total size goes beyond a maximum.
+ */
+@Slf4j
+public class RegExCache {
+    private final int maxStates;
+    private final Cache<String, Compiled> matchers;
+    // key: generation of the index + ":" + pattern
+    private final Cache<String, int[]> terms;
+
+    /**
+     * @param maxMatcherBytes the maximal total size of the compiled regexes in memory
+     * @param maxTermBytes the maximal total size of the term ids in memory
+     * @param maxStates the maximal number of DFA states of a regex, beyond it the DFA is built lazily
+     */
+    public RegExCache(long maxMatcherBytes, long maxTermBytes, int maxStates) {
+        this.maxStates = maxStates;
+        matchers = CacheBuilder.newBuilder()
+                .maximumWeight(maxMatcherBytes)
+                .weigher((String regEx, Compiled compiled) -> compiled.matcher.getMemorySize())
+                .recordStats()
+                .build();
+        terms = CacheBuilder.newBuilder()
+                .maximumWeight(maxTermBytes)
+                .weigher((String key, int[] termIds) -> 16 + 2 * key.length() + 4 * termIds.length)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * get the matcher of a regex, compiling it if it is not in the cache
+     * @param regEx a regex, normalized in lower case
+     * @return the matcher of the regex
+     * @throws ExecutionException if the regex can't be parsed
+     */
+    public RegExMatcher get(String regEx) throws ExecutionException {
+        return getCompiled(regEx).matcher;
+    }
+
+    /**
+     * @param regEx a regex, normalized in lower case
+     * @return the longest string contained in every match of the regex, empty if there is none
+     * @throws ExecutionException if the regex can't be parsed
+     */
+    public String getRequiredLiteral(String regEx) throws ExecutionException {
+        return getCompiled(regEx).literal;
+    }
+
+    private Compiled getCompiled(String regEx) throws ExecutionException {
+        String pattern = regEx.toLowerCase(Locale.ROOT);
+        return matchers.get(pattern, () -> compile(pattern));
+    }
+
+    /**
+     * get the terms of an index matching a regex, searching them if they are not in the cache
+     * @param index an index
+     * @param regEx a regex, normalized in lower case
+     * @return the ids of the matching terms, in ascending order
+     * @throws ExecutionException if the regex can't be parsed
+     */
+    public int[] getTermIds(PostingIndex index, String regEx) throws ExecutionException {
+        String pattern = regEx.toLowerCase(Locale.ROOT);
+        return terms.get(index.getGeneration() + ":" + pattern, () -> findTermIds(index, getCompiled(pattern)));
+    }
+
+    /**
+     * only the terms having the trigrams required by the regex are tested by the matcher,
+     * the trie is walked when the regex doesn't require any trigram
+     */
+    private static int[] findTermIds(PostingIndex index, Compiled compiled) {
+        if (compiled.query.isAll())
+            return compiled.matcher.findAll(index.getTermTrie());
+        int[] candidates = compiled.query.candidates(index.getTrigramIndex());
+        int count = 0;
+        for (int termId: candidates) {
+            if (compiled.matcher.find(index.getTerm(termId)))
+                candidates[count++] = termId;
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    private Compiled compile(String regEx) throws Exception {
+        RegExTree ret = RegEx.parse(regEx);
+        if (ret == null)
+            throw new Exception("invalid regex: " + regEx);
+        if (regEx.chars().anyMatch(c -> c >= NFATable.COL))
+            log.warn("RegEx " + regEx + " has chars beyond the first " + NFATable.COL
+                    + " ones, which the matchers don't support: it matches no term with them (as the Russian ones)");
+        return new Compiled(RegExCompiler.compile(ret, maxStates), TrigramQuery.of(ret), RequiredLiteral.of(ret));
+    }
+
+    private static class Compiled {
+        private final RegExMatcher matcher;
+        private final TrigramQuery query;
+        private final String literal;
+
+        private Compiled(RegExMatcher matcher, TrigramQuery query, String literal) {
+            this.matcher = matcher;
+            this.query = query;
+            this.literal = literal;
+        }
+    }
+
+    /**
+     * @return the number of hits, misses and evictions of the matchers since the start
+     */
+    public CacheStats getStats() {
+        return matchers.stats();
+    }
+
+    /**
+     * @return the number of hits, misses and evictions of the term ids since the start
+     */
+    public CacheStats getTermStats() {
+        return terms.stats();
+    }
+
+    /**
+     * @return the number of matchers in the cache
+     */
+    public long size() {
+        return matchers.size();
+    }
+
+    /**
+     * @return the number of term id arrays in the cache
+     */
+    public long termsSize() {
+        return terms.size();
+    }
+}
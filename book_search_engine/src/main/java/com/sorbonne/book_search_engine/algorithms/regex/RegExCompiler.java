@@ -0,0 +1,114 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+/**
+ * One compilation of a regex, from its syntax tree to a {@link RegExMatcher}.
+ * A regex of at most 64 chars and dots is matched by a {@link ShiftAndMatcher}, without any automaton.
+ * The compiler numbers the states of the automata it creates, so there is no shared state between compilations:
+ * a compiler is used by one thread, and all the states are garbage once the matcher is built.
+ * For the other regexes, the DFA and its table are built as long as they have at most maxStates states in all,
+ * beyond it the regex is matched by a {@link LazyDFA} creating only the states the texts need.
+ * All the matchers only have transitions by the first 256 chars (ASCII and Latin-1): a char beyond them,
+ * in the regex or in a text, is matched by nothing, not even by ".", so the terms in Cyrillic
+ * of the Russian books are never found by a regex.
+ */
+public class RegExCompiler {
+    /**
+     * default maximal number of DFA states of a compilation
+     */
+    public static final int MAX_DFA_STATES = 10_000;
+
+    private final int maxStates;
+    private int nfaStates = 0;
+    private int dfaStates = 0;
+
+    private RegExCompiler(int maxStates) {
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * compile a regex with the default maximal number of states
+     * @param ret the syntax tree of the regex
+     * @return the matcher of the regex
+     */
+    public static RegExMatcher compile(RegExTree ret) {
+        return compile(ret, MAX_DFA_STATES);
+    }
+
+    /**
+     * compile a regex
+     * @param ret the syntax tree of the regex
+     * @param maxStates maximal number of states of the DFA and its table, and of the states kept by a lazy DFA
+     * @return the bit-parallel matcher of the regex if it is small enough, else its transition table,
+     * or a lazy DFA if the table would have too many states
+     */
+    public static RegExMatcher compile(RegExTree ret, int maxStates) {
+        ShiftAndMatcher shiftAnd = ShiftAndMatcher.of(ret);
+        if (shiftAnd != null)
+            return shiftAnd;
+        RegExCompiler compiler = new RegExCompiler(maxStates);
+        NFATable nfa = NFATable.of(NFA.fromRegExTreeToNFA(ret, compiler), compiler);
+        try {
+            return DFATable.compile(DFA.fromNFAtoDFA(nfa, compiler), compiler);
+        } catch (TooManyStatesException e) {
+            return new LazyDFA(nfa, maxStates);
+        }
+    }
+
+    /**
+     * @param ret the syntax tree of a regex
+     * @return the minimal DFA of the regex, whatever its number of states
+     */
+    static DFA compileDFA(RegExTree ret) {
+        RegExCompiler compiler = new RegExCompiler(Integer.MAX_VALUE);
+        return DFA.fromNFAtoDFA(NFA.fromRegExTreeToNFA(ret, compiler), compiler);
+    }
+
+    /**
+     * @param ret the syntax tree of a regex
+     * @return the transition table of the regex, whatever its number of states
+     */
+    static DFATable compileTable(RegExTree ret) {
+        RegExCompiler compiler = new RegExCompiler(Integer.MAX_VALUE);
+        return DFATable.compile(DFA.fromNFAtoDFA(NFA.fromRegExTreeToNFA(ret, compiler), compiler), compiler);
+    }
+
+    /**
+     * @param ret the syntax tree of a regex
+     * @param maxStates maximal number of states kept by the lazy DFA
+     * @return the lazy DFA of the regex
+     */
+    static LazyDFA compileLazy(RegExTree ret, int maxStates) {
+        RegExCompiler compiler = new RegExCompiler(maxStates);
+        return new LazyDFA(NFATable.of(NFA.fromRegExTreeToNFA(ret, compiler), compiler), maxStates);
+    }
+
+    NFAState newNFAState() {
+        return new NFAState(nfaStates++);
+    }
+
+    /**
+     * @return the number of NFAStates created
+     */
+    int getNFAStateCount() {
+        return nfaStates;
+    }
+
+    /**
+     * count a new state of the DFA or of its table
+     * @throws TooManyStatesException beyond the maximal number of states
+     */
+    void addDFAState() {
+        if (dfaStates == maxStates)
+            throw new TooManyStatesException();
+        dfaStates++;
+    }
+
+    /**
+     * the DFA of the regex is too large to be built entirely
+     */
+    static class TooManyStatesException extends RuntimeException {
+        TooManyStatesException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+import com.sorbonne.book_search_engine.algorithms.index.TermTrie;
+
+/**
+ * A compiled regex, searching the regex anywhere in a text (unanchored).
+ * Matchers are shared by the threads searching the same pattern.
+ */
+public interface RegExMatcher {
+    /**
+     * @param text a text
+     * @return true if a non-empty part of the text matches the regex
+     */
+    boolean find(CharSequence text);
+
+    /**
+     * walk the trie of a dictionary, reading the prefixes shared by several terms only once
+     * @param trie the trie of a dictionary
+     * @return the ids of the terms where a part of the term matches the regex, in ascending order
+     */
+    int[] findAll(TermTrie trie);
+
+    /**
+     * @return the approximate size of the matcher in memory, in bytes
+     */
+    int getMemorySize();
+
+    /**
+     * @return a new search of the regex in a text given in several parts, used by one thread
+     */
+    Cursor cursor();
+
+    /**
+     * A search of a regex in a text read in several parts, for instance blocks of a decoded file:
+     * the state of the matcher is kept from one part to the next, so a match can span several parts.
+     */
+    interface Cursor {
+        /**
+         * read the next part of the text, stopping at the first match
+         * @param chars a buffer
+         * @param start start of the part in the buffer
+         * @param end end of the part in the buffer
+         * @return true if a non-empty part of the text read since the last reset matches the regex
+         */
+        boolean find(char[] chars, int start, int end);
+
+        /**
+         * start a new text
+         */
+        void reset();
+    }
+}
@@ -0,0 +1,78 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+/**
+ * The longest string contained in every match of a regex, so a text without it doesn't need to be matched.
+ * Found from the syntax tree: for each subtree, the string it always matches (if it matches only one),
+ * the strings all its matches start and end with, and the longest string all its matches contain.
+ * A star or a dot don't require anything.
+ */
+public class RequiredLiteral {
+    private final String exact;
+    private final String prefix;
+    private final String suffix;
+    private final String required;
+
+    private static final RequiredLiteral NONE = new RequiredLiteral(null, "", "", "");
+
+    private RequiredLiteral(String exact, String prefix, String suffix, String required) {
+        this.exact = exact;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.required = required;
+    }
+
+    /**
+     * @param ret the syntax tree of a regex
+     * @return the longest string contained in every match of the regex, empty if there is none
+     */
+    public static String of(RegExTree ret) {
+        return analyze(ret).required;
+    }
+
+    private static RequiredLiteral analyze(RegExTree ret) {
+        if (ret.subTrees.isEmpty()) {
+            if (ret.root == NodeEnum.DOT)
+                return NONE;
+            String s = String.valueOf((char) ret.root);
+            return new RequiredLiteral(s, s, s, s);
+        }
+        if (ret.root == NodeEnum.CONCAT) {
+            RequiredLiteral left = analyze(ret.subTrees.get(0));
+            RequiredLiteral right = analyze(ret.subTrees.get(1));
+            String exact = left.exact != null && right.exact != null ? left.exact + right.exact : null;
+            String prefix = left.exact != null ? left.exact + right.prefix : left.prefix;
+            String suffix = right.exact != null ? left.suffix + right.exact : right.suffix;
+            return new RequiredLiteral(exact, prefix, suffix,
+                    longest(longest(left.required, right.required), left.suffix + right.prefix));
+        }
+        if (ret.root == NodeEnum.ALTERN) {
+            RequiredLiteral left = analyze(ret.subTrees.get(0));
+            RequiredLiteral right = analyze(ret.subTrees.get(1));
+            String exact = left.exact != null && left.exact.equals(right.exact) ? left.exact : null;
+            String prefix = commonPrefix(left.prefix, right.prefix);
+            String suffix = commonSuffix(left.suffix, right.suffix);
+            String required = left.required.equals(right.required) ? left.required : longest(prefix, suffix);
+            return new RequiredLiteral(exact, prefix, suffix, required);
+        }
+        // a star can match the empty string
+        return NONE;
+    }
+
+    private static String longest(String a, String b) {
+        return b.length() > a.length() ? b : a;
+    }
+
+    private static String commonPrefix(String a, String b) {
+        int n = 0;
+        while (n < a.length() && n < b.length() && a.charAt(n) == b.charAt(n))
+            n++;
+        return a.substring(0, n);
+    }
+
+    private static String commonSuffix(String a, String b) {
+        int n = 0;
+        while (n < a.length() && n < b.length() && a.charAt(a.length() - 1 - n) == b.charAt(b.length() - 1 - n))
+            n++;
+        return a.substring(a.length() - n);
+    }
+}
@@ -0,0 +1,231 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+import com.sorbonne.book_search_engine.algorithms.index.TermTrie;
+
+import java.util.Arrays;
+
+/**
+ * Bit-parallel matcher of a regex of at most 64 chars and dots, without building any automaton.
+ * Glushkov's construction numbers the chars and dots of the regex (its positions): the NFA has one state per position,
+ * reached by the char of the position, and the set of active positions is the bits of a long.
+ * After reading a char c, the active positions are the positions following an active one, or starting the regex
+ * since a match can start anywhere, and reached by c: (first | follow(active)) & masks[c].
+ * follow(active) is the union of the positions following each active position,
+ * read from precomputed tables by chunks of 8 bits, so a char costs a few table lookups and no branch.
+ * Chars outside of the 256 ASCII chars have no transition, as in {@link DFA}.
+ */
+public class ShiftAndMatcher implements RegExMatcher {
+    private static final int COL = 256;
+    private static final int MAX_POSITIONS = 64;
+    private static final int CHUNK = 8;
+
+    // positions reached by each char
+    private final long[] masks;
+    // positions which can start or end a match
+    private final long first;
+    private final long last;
+    // follows[k][b]: positions following the positions of the bits b of the chunk k
+    private final long[][] follows;
+
+    private ShiftAndMatcher(long[] masks, long first, long last, long[][] follows) {
+        this.masks = masks;
+        this.first = first;
+        this.last = last;
+        this.follows = follows;
+    }
+
+    /**
+     * @param ret the syntax tree of a regex
+     * @return the matcher of the regex, null if it has more than 64 positions
+     */
+    public static ShiftAndMatcher of(RegExTree ret) {
+        int positions = countPositions(ret);
+        if (positions > MAX_POSITIONS)
+            return null;
+        Glushkov glushkov = new Glushkov(positions);
+        Glushkov.Sets sets = glushkov.visit(ret);
+
+        long[][] follows = new long[(positions + CHUNK - 1) / CHUNK][1 << CHUNK];
+        for (int k = 0; k < follows.length; k++) {
+            // each set of bits is a smaller set plus its highest bit
+            for (int b = 1; b < 1 << CHUNK; b++) {
+                int high = 31 - Integer.numberOfLeadingZeros(b);
+                int position = k * CHUNK + high;
+                follows[k][b] = follows[k][b & ~(1 << high)]
+                        | (position < positions ? glushkov.follow[position] : 0);
+            }
+        }
+        return new ShiftAndMatcher(glushkov.masks, sets.first, sets.last, follows);
+    }
+
+    private static int countPositions(RegExTree ret) {
+        if (ret.subTrees.isEmpty())
+            return 1;
+        int count = 0;
+        for (RegExTree subTree : ret.subTrees) {
+            count += countPositions(subTree);
+        }
+        return count;
+    }
+
+    /**
+     * Glushkov's construction: for each subtree, the positions starting and ending its strings
+     * and whether it matches the empty string, and the positions which can follow each position
+     */
+    private static class Glushkov {
+        private final long[] masks = new long[COL];
+        private final long[] follow;
+        private int positions = 0;
+
+        private static class Sets {
+            private final boolean nullable;
+            private final long first;
+            private final long last;
+
+            private Sets(boolean nullable, long first, long last) {
+                this.nullable = nullable;
+                this.first = first;
+                this.last = last;
+            }
+        }
+
+        private Glushkov(int positions) {
+            this.follow = new long[positions];
+        }
+
+        private Sets visit(RegExTree ret) {
+            if (ret.subTrees.isEmpty()) {
+                long bit = 1L << positions++;
+                if (ret.root == NodeEnum.DOT) {
+                    for (int c = 0; c < COL; c++) {
+                        masks[c] |= bit;
+                    }
+                } else if (ret.root >= 0 && ret.root < COL) {
+                    masks[ret.root] |= bit;
+                }
+                return new Sets(false, bit, bit);
+            }
+            if (ret.root == NodeEnum.CONCAT) {
+                Sets left = visit(ret.subTrees.get(0));
+                Sets right = visit(ret.subTrees.get(1));
+                addFollow(left.last, right.first);
+                return new Sets(left.nullable && right.nullable,
+                        left.nullable ? left.first | right.first : left.first,
+                        right.nullable ? left.last | right.last : right.last);
+            }
+            if (ret.root == NodeEnum.ALTERN) {
+                Sets left = visit(ret.subTrees.get(0));
+                Sets right = visit(ret.subTrees.get(1));
+                return new Sets(left.nullable || right.nullable, left.first | right.first, left.last | right.last);
+            }
+            if (ret.root == NodeEnum.ETOILE) {
+                Sets sets = visit(ret.subTrees.get(0));
+                addFollow(sets.last, sets.first);
+                return new Sets(true, sets.first, sets.last);
+            }
+            // as in the NFA, an unknown operator matches nothing
+            for (RegExTree subTree : ret.subTrees) {
+                visit(subTree);
+            }
+            return new Sets(false, 0, 0);
+        }
+
+        /**
+         * the positions "to" can follow each of the positions "from"
+         */
+        private void addFollow(long from, long to) {
+            for (long bits = from; bits != 0; bits &= bits - 1) {
+                follow[Long.numberOfTrailingZeros(bits)] |= to;
+            }
+        }
+    }
+
+    /**
+     * @return the active positions after reading the char c from the active positions
+     */
+    private long next(long active, char c) {
+        if (c >= COL)
+            return 0;
+        long reachable = first;
+        for (int k = 0; k < follows.length; k++) {
+            reachable |= follows[k][(int) (active >>> (k * CHUNK)) & 0xFF];
+        }
+        return reachable & masks[c];
+    }
+
+    @Override
+    public boolean find(CharSequence text) {
+        long active = 0;
+        for (int i = 0; i < text.length(); i++) {
+            active = next(active, text.charAt(i));
+            if ((active & last) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new ShiftAndCursor();
+    }
+
+    /**
+     * the positions active after the text read so far
+     */
+    private class ShiftAndCursor implements Cursor {
+        private long active = 0;
+
+        @Override
+        public boolean find(char[] chars, int start, int end) {
+            long active = this.active;
+            for (int i = start; i < end && (active & last) == 0; i++) {
+                active = next(active, chars[i]);
+            }
+            this.active = active;
+            return (active & last) != 0;
+        }
+
+        @Override
+        public void reset() {
+            active = 0;
+        }
+    }
+
+    /**
+     * walk the trie of a dictionary with the active positions of each prefix:
+     * a node whose prefix matches brings all its terms
+     */
+    @Override
+    public int[] findAll(TermTrie trie) {
+        int[] termIds = new int[16];
+        int count = 0;
+        // active positions after the prefix of each depth of the current branch
+        long[] branch = new long[16];
+        int node = TermTrie.ROOT;
+        while (node < trie.size()) {
+            int depth = trie.getDepth(node);
+            long active = depth > 0 ? next(branch[depth - 1], trie.getLabel(node)) : 0;
+            if ((active & last) != 0) {
+                int from = trie.getFrom(node);
+                int to = trie.getTo(node);
+                if (count + to - from > termIds.length)
+                    termIds = Arrays.copyOf(termIds, Math.max(termIds.length * 2, count + to - from));
+                for (int termId = from; termId < to; termId++) {
+                    termIds[count++] = termId;
+                }
+                node = trie.getEnd(node);
+            } else {
+                if (depth == branch.length)
+                    branch = Arrays.copyOf(branch, depth * 2);
+                branch[depth] = active;
+                node++;
+            }
+        }
+        return Arrays.copyOf(termIds, count);
+    }
+
+    @Override
+    public int getMemorySize() {
+        return 16 + 8 * (masks.length + follows.length * (1 << CHUNK)) + 16 * follows.length;
+    }
+}
@@ -0,0 +1,226 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+import com.sorbonne.book_search_engine.algorithms.index.PostingsIntersection;
+import com.sorbonne.book_search_engine.algorithms.index.TrigramIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Trigrams required in a text matched by a regex, as a query of ANDs and ORs of trigrams,
+ * so only the terms of a {@link TrigramIndex} answering the query have to be tested by the automaton.
+ * The query is found from the syntax tree: the finite sets of strings a subtree can match are kept exact
+ * (concatenations and alternatives of chars, up to MAX_EXACT strings), and become the query
+ * OR(string: AND(trigrams of the string)) as soon as the subtree is mixed with a star, a dot or a large set.
+ * A string shorter than 3 chars, a star or a dot don't require anything.
+ */
+public class TrigramQuery {
+    private static final int MAX_EXACT = 16;
+
+    private static final TrigramQuery ALL = new TrigramQuery(Operator.ALL, 0, null);
+
+    private enum Operator { ALL, GRAM, AND, OR }
+
+    private final Operator operator;
+    private final long gram;
+    private final List<TrigramQuery> operands;
+
+    private TrigramQuery(Operator operator, long gram, List<TrigramQuery> operands) {
+        this.operator = operator;
+        this.gram = gram;
+        this.operands = operands;
+    }
+
+    /**
+     * @param ret the syntax tree of a regex
+     * @return the query of the trigrams required by the regex
+     */
+    public static TrigramQuery of(RegExTree ret) {
+        return analyze(ret).toQuery();
+    }
+
+    /**
+     * @return true if the query doesn't require any trigram
+     */
+    public boolean isAll() {
+        return operator == Operator.ALL;
+    }
+
+    /**
+     * @param index the trigram index of a dictionary
+     * @return the ids of the terms answering the query, in ascending order, null if the query is ALL
+     */
+    public int[] candidates(TrigramIndex index) {
+        switch (operator) {
+            case GRAM:
+                return index.getTermIds(gram);
+            case AND:
+                List<int[]> lists = new ArrayList<>();
+                for (TrigramQuery operand: operands) {
+                    int[] termIds = operand.candidates(index);
+                    if (termIds != null)
+                        lists.add(termIds);
+                }
+                return lists.isEmpty() ? null : PostingsIntersection.intersect(lists);
+            case OR:
+                int[] result = new int[0];
+                for (TrigramQuery operand: operands) {
+                    int[] termIds = operand.candidates(index);
+                    if (termIds == null)
+                        return null;
+                    result = union(result, termIds);
+                }
+                return result;
+            default:
+                return null;
+        }
+    }
+
+    private static TrigramQuery and(TrigramQuery left, TrigramQuery right) {
+        if (left.isAll())
+            return right;
+        if (right.isAll())
+            return left;
+        return new TrigramQuery(Operator.AND, 0, Arrays.asList(left, right));
+    }
+
+    private static TrigramQuery or(TrigramQuery left, TrigramQuery right) {
+        if (left.isAll() || right.isAll())
+            return ALL;
+        return new TrigramQuery(Operator.OR, 0, Arrays.asList(left, right));
+    }
+
+    /**
+     * @return the query of the trigrams of a string, ALL if it is shorter than 3 chars
+     */
+    private static TrigramQuery ofString(String s) {
+        TrigramQuery query = ALL;
+        for (int i = 0; i + 2 < s.length(); i++) {
+            query = and(query, new TrigramQuery(Operator.GRAM,
+                    TrigramIndex.gram(s.charAt(i), s.charAt(i + 1), s.charAt(i + 2)), null));
+        }
+        return query;
+    }
+
+    /**
+     * @return the ids of both sorted arrays, in ascending order, without duplicates
+     */
+    private static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j])
+                result[n++] = a[i++];
+            else if (a[i] > b[j])
+                result[n++] = b[j++];
+            else {
+                result[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length)
+            result[n++] = a[i++];
+        while (j < b.length)
+            result[n++] = b[j++];
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * what a subtree can match: its exact set of strings when it is small, else a query
+     */
+    private static class Info {
+        private final Set<String> exact;
+        private final TrigramQuery query;
+
+        private Info(Set<String> exact, TrigramQuery query) {
+            this.exact = exact;
+            this.query = query;
+        }
+
+        private TrigramQuery toQuery() {
+            if (exact == null)
+                return query;
+            TrigramQuery result = null;
+            for (String s: exact) {
+                TrigramQuery query = ofString(s);
+                result = result == null ? query : or(result, query);
+            }
+            return result == null ? ALL : result;
+        }
+    }
+
+    private static Info analyze(RegExTree ret) {
+        if (ret.subTrees.isEmpty()) {
+            if (ret.root == NodeEnum.DOT)
+                return new Info(null, ALL);
+            Set<String> exact = new LinkedHashSet<>();
+            exact.add(String.valueOf((char) ret.root));
+            return new Info(exact, null);
+        }
+        if (ret.root == NodeEnum.CONCAT) {
+            // the concatenations are nested on the left: "x*abc" is (((x*)a)b)c, so the factors are taken
+            // in order and the consecutive exact ones are joined, else the chars after a star would be alone
+            List<RegExTree> factors = new ArrayList<>();
+            concatFactors(ret, factors);
+            TrigramQuery query = ALL;
+            Set<String> run = null;
+            boolean mixed = false;
+            for (RegExTree factor: factors) {
+                Info info = analyze(factor);
+                if (info.exact != null && run != null && run.size() * info.exact.size() <= MAX_EXACT) {
+                    Set<String> exact = new LinkedHashSet<>();
+                    for (String l: run) {
+                        for (String r: info.exact) {
+                            exact.add(l + r);
+                        }
+                    }
+                    run = exact;
+                    continue;
+                }
+                if (run != null) {
+                    query = and(query, new Info(run, null).toQuery());
+                    mixed = true;
+                }
+                if (info.exact != null) {
+                    run = info.exact;
+                } else {
+                    query = and(query, info.query);
+                    run = null;
+                    mixed = true;
+                }
+            }
+            if (!mixed)
+                return new Info(run, null);
+            return new Info(null, run == null ? query : and(query, new Info(run, null).toQuery()));
+        }
+        if (ret.root == NodeEnum.ALTERN) {
+            Info left = analyze(ret.subTrees.get(0));
+            Info right = analyze(ret.subTrees.get(1));
+            if (left.exact != null && right.exact != null && left.exact.size() + right.exact.size() <= MAX_EXACT) {
+                Set<String> exact = new LinkedHashSet<>(left.exact);
+                exact.addAll(right.exact);
+                return new Info(exact, null);
+            }
+            return new Info(null, or(left.toQuery(), right.toQuery()));
+        }
+        // a star can match the empty string
+        return new Info(null, ALL);
+    }
+
+    /**
+     * @param ret a subtree
+     * @param factors the subtrees concatenated by ret, in order, added to the list
+     */
+    private static void concatFactors(RegExTree ret, List<RegExTree> factors) {
+        if (ret.root != NodeEnum.CONCAT) {
+            factors.add(ret);
+            return;
+        }
+        for (RegExTree subTree: ret.subTrees) {
+            concatFactors(subTree, factors);
+        }
+    }
+}
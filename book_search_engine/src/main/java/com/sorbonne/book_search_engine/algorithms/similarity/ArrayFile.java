@@ -0,0 +1,257 @@
+package com.sorbonne.book_search_engine.algorithms.similarity;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary format of the arrays of the similarity structures (distances, nearest neighbors, closeness),
+ * replacing their java serialization.
+ * <pre>
+ * header (12 bytes, big endian)
+ *   int   magic "BSEA"
+ *   int   type of the content, 4 ASCII chars
+ *   int   version of the content
+ * fields of the content, in the order of its version
+ *   int   a value
+ *   or an array: int number of elements, then the elements (int, float or double)
+ * int   CRC32 of the header and the fields
+ * </pre>
+ * The length of an array is checked against the size of the file before it is allocated, and the CRC once
+ * the fields are read, so a file of another type or version, truncated or corrupted is an IOException.
+ */
+public final class ArrayFile {
+    static final int MAGIC = 0x42534541;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private ArrayFile() {
+    }
+
+    /**
+     * writes the fields of a content to a file, then its CRC when closed
+     */
+    public static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * @param file the destination, replaced if it exists
+         * @param type the type of the content, 4 ASCII chars
+         * @param version the version of the content
+         * @throws IOException when the file can't be created
+         */
+        public Writer(File file, String type, int version) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(MAGIC).putInt(tag(type)).putInt(version);
+        }
+
+        public void writeInt(int value) throws IOException {
+            reserve(4);
+            buffer.putInt(value);
+        }
+
+        public void writeInts(int[] values) throws IOException {
+            writeInt(values.length);
+            for (int i = 0; i < values.length; ) {
+                int n = Math.min(values.length - i, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(values, i, n);
+                ((Buffer) buffer).position(buffer.position() + 4 * n);
+                i += n;
+                reserve(4);
+            }
+        }
+
+        public void writeFloats(float[] values) throws IOException {
+            writeInt(values.length);
+            for (int i = 0; i < values.length; ) {
+                int n = Math.min(values.length - i, buffer.remaining() / 4);
+                buffer.asFloatBuffer().put(values, i, n);
+                ((Buffer) buffer).position(buffer.position() + 4 * n);
+                i += n;
+                reserve(4);
+            }
+        }
+
+        public void writeDoubles(double[] values) throws IOException {
+            writeInt(values.length);
+            for (int i = 0; i < values.length; ) {
+                int n = Math.min(values.length - i, buffer.remaining() / 8);
+                buffer.asDoubleBuffer().put(values, i, n);
+                ((Buffer) buffer).position(buffer.position() + 8 * n);
+                i += n;
+                reserve(8);
+            }
+        }
+
+        /**
+         * write the CRC after the fields, then close the file
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                buffer.putInt((int) crc.getValue());
+                ((Buffer) buffer).flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes)
+                flush();
+        }
+
+        private void flush() throws IOException {
+            crc.update(buffer.array(), 0, buffer.position());
+            ((Buffer) buffer).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            ((Buffer) buffer).clear();
+        }
+    }
+
+    /**
+     * reads the fields of a content from a file, in the order they were written
+     */
+    public static final class Reader implements Closeable {
+        private final File file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+        // bytes of the file not read in the buffer yet
+        private long unread;
+
+        /**
+         * @param file a file written by a {@link Writer}
+         * @param type the expected type of the content
+         * @param version the expected version of the content
+         * @throws IOException when the file can't be read, or has another type or version
+         */
+        public Reader(File file, String type, int version) throws IOException {
+            this.file = file;
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                unread = channel.size();
+                ((Buffer) buffer).flip();
+                if (unread < 16 || readInt() != MAGIC || readInt() != tag(type))
+                    throw new IOException(file + " is not a file of " + type);
+                int fileVersion = readInt();
+                if (fileVersion != version)
+                    throw new IOException(file + " has an unsupported version of " + type + ": " + fileVersion);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public int readInt() throws IOException {
+            fill(4);
+            return buffer.getInt();
+        }
+
+        public int[] readInts() throws IOException {
+            int[] values = new int[readLength(4)];
+            for (int i = 0; i < values.length; ) {
+                fill(4);
+                int n = Math.min(values.length - i, buffer.remaining() / 4);
+                buffer.asIntBuffer().get(values, i, n);
+                ((Buffer) buffer).position(buffer.position() + 4 * n);
+                i += n;
+            }
+            return values;
+        }
+
+        public float[] readFloats() throws IOException {
+            float[] values = new float[readLength(4)];
+            for (int i = 0; i < values.length; ) {
+                fill(4);
+                int n = Math.min(values.length - i, buffer.remaining() / 4);
+                buffer.asFloatBuffer().get(values, i, n);
+                ((Buffer) buffer).position(buffer.position() + 4 * n);
+                i += n;
+            }
+            return values;
+        }
+
+        public double[] readDoubles() throws IOException {
+            double[] values = new double[readLength(8)];
+            for (int i = 0; i < values.length; ) {
+                fill(8);
+                int n = Math.min(values.length - i, buffer.remaining() / 8);
+                buffer.asDoubleBuffer().get(values, i, n);
+                ((Buffer) buffer).position(buffer.position() + 8 * n);
+                i += n;
+            }
+            return values;
+        }
+
+        /**
+         * check that all the fields are read and match the CRC at the end of the file
+         * @throws IOException when the file is corrupted
+         */
+        public void checkEnd() throws IOException {
+            crc.update(buffer.array(), 0, buffer.position());
+            buffer.compact();
+            ((Buffer) buffer).flip();
+            if (buffer.remaining() + unread != 4)
+                throw new IOException(file + " is corrupted");
+            fill(4);
+            if (buffer.getInt() != (int) crc.getValue())
+                throw new IOException(file + " is corrupted");
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * @return the length of the next array, which must fit in the rest of the file before its CRC
+         */
+        private int readLength(int elementSize) throws IOException {
+            int length = readInt();
+            if (length < 0 || (long) length * elementSize > buffer.remaining() + unread - 4)
+                throw new IOException(file + " is corrupted");
+            return length;
+        }
+
+        /**
+         * read the file until the buffer has at least the given number of bytes
+         */
+        private void fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes)
+                return;
+            crc.update(buffer.array(), 0, buffer.position());
+            buffer.compact();
+            while (buffer.position() < bytes && unread > 0) {
+                int n = channel.read(buffer);
+                if (n < 0)
+                    break;
+                unread -= n;
+            }
+            ((Buffer) buffer).flip();
+            if (buffer.remaining() < bytes)
+                throw new IOException(file + " is truncated");
+        }
+    }
+
+    private static int tag(String type) {
+        byte[] bytes = type.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length != 4)
+            throw new IllegalArgumentException("type of 4 chars expected: " + type);
+        return ByteBuffer.wrap(bytes).getInt();
+    }
+}
@@ -0,0 +1,53 @@
+package com.sorbonne.book_search_engine.algorithms.similarity;
+
+/**
+ * Distances between the books of the library, used for the suggestions and the closeness centrality.
+ * Books are identified by an index between 0 and size() - 1, in ascending order of ids.
+ */
+public interface BookDistances {
+    /**
+     * @return the number of books
+     */
+    int size();
+
+    /**
+     * @param index the index of a book
+     * @return the id of the book
+     */
+    int getId(int index);
+
+    /**
+     * @param id the id of a book
+     * @return the index of the book, or a negative value if the book is not known
+     */
+    int indexOf(int id);
+
+    /**
+     * @param i the index of a book
+     * @param j the index of another book
+     * @return the distance between the two books, 0 for a book and itself
+     */
+    float getDistance(int i, int j);
+
+    /**
+     * @param i the index of a book
+     * @return the sum of the distances between the book and all the books
+     */
+    double getDistanceSum(int i);
+
+    /**
+     * @param i the index of a book
+     * @param k the maximal number of books
+     * @return the indexes of the k closest other books, by ascending distance then ascending index
+     */
+    int[] getNearest(int i, int k);
+
+    /**
+     * @param i the index of a book
+     * @return the index of the closest other book, the smallest index on a tie, -1 if there is none
+     */
+    default int getNearest(int i) {
+        int[] nearest = getNearest(i, 1);
+        return nearest.length == 0 ? -1 : nearest[0];
+    }
+}
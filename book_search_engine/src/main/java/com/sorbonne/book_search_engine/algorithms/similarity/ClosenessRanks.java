@@ -0,0 +1,100 @@
+package com.sorbonne.book_search_engine.algorithms.similarity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Rank of each book in the closeness centrality ranking, in a dense array indexed by book id.
+ * Ordering a list of books by closeness sorts primitive longs (rank << 32 | position in the list),
+ * books without rank coming first like with the index of their id in the ranking (-1).
+ */
+public class ClosenessRanks {
+    private final int[] rankById;
+
+    /**
+     * @param orderedIds the ids of the books by decreasing closeness centrality
+     */
+    public ClosenessRanks(Iterable<Integer> orderedIds) {
+        int maxId = -1;
+        for (int id: orderedIds) {
+            maxId = Math.max(maxId, id);
+        }
+        rankById = new int[maxId + 1];
+        Arrays.fill(rankById, -1);
+        int rank = 0;
+        for (int id: orderedIds) {
+            rankById[id] = rank++;
+        }
+    }
+
+    /**
+     * @param id the id of a book
+     * @return the rank of the book, 0 for the most central one, -1 if the book is not ranked
+     */
+    public int getRank(int id) {
+        return id >= 0 && id < rankById.length ? rankById[id] : -1;
+    }
+
+    /**
+     * order items by the closeness of their books, keeping the order of the list between books of the same rank
+     * @param items the items to order
+     * @param idOf the id of the book of an item
+     * @param limit the maximal number of items returned, only the first ones are fully sorted
+     * @return a new list of at most limit items
+     */
+    public <T> List<T> order(List<T> items, ToIntFunction<T> idOf, int limit) {
+        long[] keys = new long[items.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (long) getRank(idOf.applyAsInt(items.get(i))) << 32 | i;
+        }
+        int k = Math.max(0, Math.min(limit, keys.length));
+        if (k < keys.length) {
+            selectSmallest(keys, k);
+            Arrays.sort(keys, 0, k);
+        } else {
+            Arrays.sort(keys);
+        }
+        List<T> result = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+            result.add(items.get((int) keys[i]));
+        }
+        return result;
+    }
+
+    /**
+     * quickselect: move the k smallest keys to the beginning of the array, in any order
+     */
+    static void selectSmallest(long[] keys, int k) {
+        int from = 0;
+        int to = keys.length - 1;
+        while (from < to) {
+            long pivot = medianOfThree(keys[from], keys[(from + to) >>> 1], keys[to]);
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (keys[i] < pivot)
+                    i++;
+                while (keys[j] > pivot)
+                    j--;
+                if (i <= j) {
+                    long tmp = keys[i];
+                    keys[i++] = keys[j];
+                    keys[j--] = tmp;
+                }
+            }
+            // keys[from..j] <= pivot <= keys[i..to]
+            if (k <= j)
+                to = j;
+            else if (k >= i)
+                from = i;
+            else
+                return;
+        }
+    }
+
+    private static long medianOfThree(long a, long b, long c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+}
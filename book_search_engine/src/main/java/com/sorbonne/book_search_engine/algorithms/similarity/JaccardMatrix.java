@@ -0,0 +1,212 @@
+package com.sorbonne.book_search_engine.algorithms.similarity;
+
+import com.sorbonne.book_search_engine.algorithms.index.Postings;
+import com.sorbonne.book_search_engine.algorithms.keyword.config.KeywordDictionary;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Jaccard distances between all the books having keywords, a symmetric matrix with a zero diagonal.
+ * Only the upper triangle is stored, row by row, in a dense float array: the distance between the books
+ * of indexes i < j is at i * (2n - i - 1) / 2 + (j - i - 1). Books are indexed in ascending order of ids.
+ */
+public class JaccardMatrix implements BookDistances {
+    private static final String FILE_TYPE = "JMAT";
+    private static final int FILE_VERSION = 1;
+    // number of pairs of rows computed by a task without splitting it
+    private static final int ROW_PAIRS_PER_TASK = 4;
+
+    private final int[] ids;
+    private final float[] distances;
+
+    private JaccardMatrix(int[] ids) {
+        this(ids, new float[(int) ((long) ids.length * (ids.length - 1) / 2)]);
+    }
+
+    private JaccardMatrix(int[] ids, float[] distances) {
+        this.ids = ids;
+        this.distances = distances;
+    }
+
+    /**
+     * @param file the destination, as an {@link ArrayFile}: the ids, then the upper triangle
+     * @throws IOException when error while writing to the file occurs
+     */
+    public void write(File file) throws IOException {
+        try (ArrayFile.Writer out = new ArrayFile.Writer(file, FILE_TYPE, FILE_VERSION)) {
+            out.writeInts(ids);
+            out.writeFloats(distances);
+        }
+    }
+
+    /**
+     * @param file a file written by {@link #write}
+     * @return the matrix of the file
+     * @throws IOException when the file can't be read, or is not a valid matrix
+     */
+    public static JaccardMatrix read(File file) throws IOException {
+        try (ArrayFile.Reader in = new ArrayFile.Reader(file, FILE_TYPE, FILE_VERSION)) {
+            int[] ids = in.readInts();
+            float[] distances = in.readFloats();
+            in.checkEnd();
+            if (distances.length != (long) ids.length * (ids.length - 1) / 2 || !isAscending(ids))
+                throw new IOException(file + " is not a valid matrix");
+            return new JaccardMatrix(ids, distances);
+        }
+    }
+
+    static boolean isAscending(int[] values) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i - 1] >= values[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * compute the distances between all the books of a keyword dictionary, rows spread over a pool of threads
+     * @param dictionary the keyword dictionary, giving the stems of each book with their relevance
+     * @param threads the size of the pool
+     * @return the matrix of distances
+     */
+    public static JaccardMatrix compute(KeywordDictionary dictionary, int threads) {
+        JaccardMatrix matrix = new JaccardMatrix(dictionary.getBookIds());
+        Postings[] books = new Postings[matrix.ids.length];
+        for (int i = 0; i < books.length; i++) {
+            books[i] = dictionary.getBookStems(matrix.ids[i]);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // row i has n - i - 1 distances, rows i and n - 1 - i are computed together to balance the tasks
+            pool.invoke(new RowsTask(matrix, books, 0, (books.length + 1) / 2));
+        } finally {
+            pool.shutdown();
+        }
+        return matrix;
+    }
+
+    /**
+     * Jaccard distance between two books, on the stems they have in common:
+     * the sum of the differences of relevance divided by the sum of the maximal relevances,
+     * 1 if they have no stem in common
+     * @param book1 the stem ids of a book in ascending order, with their relevance
+     * @param book2 the stem ids of another book
+     * @return the distance
+     */
+    public static double distance(Postings book1, Postings book2) {
+        double dividend = 0;
+        double divisor = 0;
+        int i = 0, j = 0;
+        while (i < book1.size() && j < book2.size()) {
+            int stem1 = book1.getId(i);
+            int stem2 = book2.getId(j);
+            if (stem1 < stem2) {
+                i++;
+            } else if (stem1 > stem2) {
+                j++;
+            } else {
+                double relevance1 = book1.getRelevance(i++);
+                double relevance2 = book2.getRelevance(j++);
+                dividend += Math.abs(relevance1 - relevance2);
+                divisor += Math.max(relevance1, relevance2);
+            }
+        }
+        if (divisor == 0)
+            return 1.0;
+        return dividend / divisor;
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public int indexOf(int id) {
+        return Arrays.binarySearch(ids, id);
+    }
+
+    @Override
+    public float getDistance(int i, int j) {
+        if (i == j)
+            return 0;
+        if (i > j)
+            return distances[offset(j, i)];
+        return distances[offset(i, j)];
+    }
+
+    @Override
+    public double getDistanceSum(int i) {
+        double sum = 0;
+        for (int j = 0; j < i; j++) {
+            sum += distances[offset(j, i)];
+        }
+        int rowStart = offset(i, i + 1);
+        for (int k = 0; k < ids.length - i - 1; k++) {
+            sum += distances[rowStart + k];
+        }
+        return sum;
+    }
+
+    @Override
+    public int[] getNearest(int i, int k) {
+        NearestSelector selector = new NearestSelector(Math.min(k, ids.length - 1));
+        for (int j = 0; j < ids.length; j++) {
+            if (j != i)
+                selector.offer(j, getDistance(i, j));
+        }
+        return selector.indexes();
+    }
+
+    private int offset(int i, int j) {
+        return (int) ((long) i * (2L * ids.length - i - 1) / 2) + (j - i - 1);
+    }
+
+    private void computeRow(Postings[] books, int i) {
+        int rowStart = offset(i, i + 1);
+        for (int j = i + 1; j < books.length; j++) {
+            distances[rowStart + j - i - 1] = (float) distance(books[i], books[j]);
+        }
+    }
+
+    /**
+     * computes the pairs of rows (i, n - 1 - i) for i in [from, to), splitting the range between subtasks
+     */
+    private static class RowsTask extends RecursiveAction {
+        private final JaccardMatrix matrix;
+        private final Postings[] books;
+        private final int from;
+        private final int to;
+
+        RowsTask(JaccardMatrix matrix, Postings[] books, int from, int to) {
+            this.matrix = matrix;
+            this.books = books;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROW_PAIRS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RowsTask(matrix, books, from, middle), new RowsTask(matrix, books, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                matrix.computeRow(books, i);
+                int mirror = books.length - 1 - i;
+                if (mirror != i)
+                    matrix.computeRow(books, mirror);
+            }
+        }
+    }
+}
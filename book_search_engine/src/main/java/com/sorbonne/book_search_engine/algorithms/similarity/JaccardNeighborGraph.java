@@ -0,0 +1,214 @@
+package com.sorbonne.book_search_engine.algorithms.similarity;
+
+import com.sorbonne.book_search_engine.algorithms.index.Postings;
+import com.sorbonne.book_search_engine.algorithms.keyword.config.KeywordDictionary;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Approximate Jaccard distances: exact distances between the candidate pairs of books found by {@link MinHashLsh},
+ * the other pairs are considered at the maximal distance 1.
+ * The graph is stored in compressed rows: the neighbors of the book i are neighbors[offsets[i]..offsets[i + 1]),
+ * in ascending order, with their distance at the same positions in distances.
+ */
+@Slf4j
+public class JaccardNeighborGraph implements BookDistances {
+    private static final String FILE_TYPE = "JLSH";
+    private static final int FILE_VERSION = 1;
+
+    private final int[] ids;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final float[] distances;
+
+    private JaccardNeighborGraph(int[] ids, int[] offsets, int[] neighbors, float[] distances) {
+        this.ids = ids;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.distances = distances;
+    }
+
+    /**
+     * @param file the destination, as an {@link ArrayFile}: the ids, offsets, neighbors and distances
+     * @throws IOException when error while writing to the file occurs
+     */
+    public void write(File file) throws IOException {
+        try (ArrayFile.Writer out = new ArrayFile.Writer(file, FILE_TYPE, FILE_VERSION)) {
+            out.writeInts(ids);
+            out.writeInts(offsets);
+            out.writeInts(neighbors);
+            out.writeFloats(distances);
+        }
+    }
+
+    /**
+     * @param file a file written by {@link #write}
+     * @return the graph of the file
+     * @throws IOException when the file can't be read, or is not a valid graph
+     */
+    public static JaccardNeighborGraph read(File file) throws IOException {
+        try (ArrayFile.Reader in = new ArrayFile.Reader(file, FILE_TYPE, FILE_VERSION)) {
+            int[] ids = in.readInts();
+            int[] offsets = in.readInts();
+            int[] neighbors = in.readInts();
+            float[] distances = in.readFloats();
+            in.checkEnd();
+            boolean valid = JaccardMatrix.isAscending(ids) && offsets.length == ids.length + 1 && offsets[0] == 0
+                    && offsets[ids.length] == neighbors.length && distances.length == neighbors.length;
+            for (int i = 0; valid && i < ids.length; i++) {
+                valid = offsets[i] <= offsets[i + 1];
+            }
+            for (int k = 0; valid && k < neighbors.length; k++) {
+                valid = neighbors[k] >= 0 && neighbors[k] < ids.length;
+            }
+            if (!valid)
+                throw new IOException(file + " is not a valid graph");
+            return new JaccardNeighborGraph(ids, offsets, neighbors, distances);
+        }
+    }
+
+    /**
+     * find the candidate pairs of books with MinHash/LSH, then compute their exact distance,
+     * signatures, bands and distances spread over a pool of threads
+     * @param dictionary the keyword dictionary, giving the stems of each book with their relevance
+     * @param lsh the MinHash/LSH parameters
+     * @param threads the size of the pool
+     * @return the graph of the candidate pairs
+     */
+    public static JaccardNeighborGraph compute(KeywordDictionary dictionary, MinHashLsh lsh, int threads) {
+        int[] ids = dictionary.getBookIds();
+        Postings[] books = new Postings[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            books[i] = dictionary.getBookStems(ids[i]);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            int[][] signatures = pool.submit(() -> IntStream.range(0, books.length).parallel()
+                    .mapToObj(i -> lsh.signature(books[i]))
+                    .toArray(int[][]::new)).join();
+            long[] pairs = unique(pool.submit(() -> IntStream.range(0, lsh.getBands()).parallel()
+                    .mapToObj(band -> lsh.candidatePairs(signatures, band))
+                    .flatMapToLong(Arrays::stream)
+                    .toArray()).join());
+            log.info("MinHash/LSH: " + lsh.getBands() + " bands of " + lsh.getRows() + " rows, "
+                    + pairs.length + " candidate pairs out of " + (long) books.length * (books.length - 1) / 2);
+            if (lsh.getTruncatedBuckets() > 0)
+                log.warn("MinHash/LSH: " + lsh.getTruncatedBuckets() + " buckets of books sharing a band were too large, "
+                        + lsh.getDroppedPairs() + " of their pairs were not candidates by them (some may be by other bands)");
+            float[] pairDistances = new float[pairs.length];
+            pool.submit(() -> IntStream.range(0, pairs.length).parallel().forEach(p ->
+                    pairDistances[p] = (float) JaccardMatrix.distance(books[(int) (pairs[p] >>> 32)], books[(int) pairs[p]])
+            )).join();
+            return fromPairs(ids, pairs, pairDistances);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return the values sorted in ascending order, without duplicates
+     */
+    private static long[] unique(long[] values) {
+        Arrays.sort(values);
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (n == 0 || values[i] != values[n - 1])
+                values[n++] = values[i];
+        }
+        return Arrays.copyOf(values, n);
+    }
+
+    /**
+     * @param pairs sorted pairs of indexes (i << 32 | j) with i < j
+     */
+    static JaccardNeighborGraph fromPairs(int[] ids, long[] pairs, float[] pairDistances) {
+        int[] offsets = new int[ids.length + 1];
+        for (long pair: pairs) {
+            offsets[(int) (pair >>> 32) + 1]++;
+            offsets[(int) pair + 1]++;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] neighbors = new int[offsets[ids.length]];
+        float[] distances = new float[neighbors.length];
+        int[] next = Arrays.copyOf(offsets, ids.length);
+        // pairs are sorted on (i, j): the first pass adds to each row its smaller neighbors in ascending order,
+        // the second one its larger neighbors in ascending order, so each row ends up sorted
+        for (int p = 0; p < pairs.length; p++) {
+            int i = (int) (pairs[p] >>> 32);
+            int j = (int) pairs[p];
+            neighbors[next[j]] = i;
+            distances[next[j]++] = pairDistances[p];
+        }
+        for (int p = 0; p < pairs.length; p++) {
+            int i = (int) (pairs[p] >>> 32);
+            int j = (int) pairs[p];
+            neighbors[next[i]] = j;
+            distances[next[i]++] = pairDistances[p];
+        }
+        return new JaccardNeighborGraph(ids, offsets, neighbors, distances);
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public int indexOf(int id) {
+        return Arrays.binarySearch(ids, id);
+    }
+
+    /**
+     * @param i the index of a book
+     * @param j the index of another book
+     * @return the distance between the two books, 1 if they are not a candidate pair
+     */
+    @Override
+    public float getDistance(int i, int j) {
+        if (i == j)
+            return 0;
+        int k = Arrays.binarySearch(neighbors, offsets[i], offsets[i + 1], j);
+        return k < 0 ? 1 : distances[k];
+    }
+
+    /**
+     * @param i the index of a book
+     * @return the number of books paired with the book
+     */
+    public int getNeighborCount(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    @Override
+    public double getDistanceSum(int i) {
+        double sum = ids.length - 1 - getNeighborCount(i);
+        for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+            sum += distances[k];
+        }
+        return sum;
+    }
+
+    /**
+     * only the candidates are searched, a book without candidate has no nearest book
+     */
+    @Override
+    public int[] getNearest(int i, int k) {
+        NearestSelector selector = new NearestSelector(Math.min(k, getNeighborCount(i)));
+        for (int p = offsets[i]; p < offsets[i + 1]; p++) {
+            selector.offer(neighbors[p], distances[p]);
+        }
+        return selector.indexes();
+    }
+}
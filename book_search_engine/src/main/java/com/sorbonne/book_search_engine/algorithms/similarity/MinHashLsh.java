@@ -0,0 +1,166 @@
+package com.sorbonne.book_search_engine.algorithms.similarity;
+
+import com.sorbonne.book_search_engine.algorithms.index.Postings;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Candidate pairs of similar books by locality sensitive hashing.
+ * Each book gets a MinHash signature over the ids of its stems: for each hash function, the minimal hash of its stems.
+ * Two books have the same value at a position of their signatures with a probability equal to the Jaccard
+ * similarity of their sets of stems. Signatures are cut into bands of rows, and two books sharing a whole band
+ * are candidates. The number of rows per band is the largest one reaching the recall target,
+ * i.e. finding as candidates the pairs of books of a given similarity with the requested probability.
+ */
+public class MinHashLsh {
+    // in a bucket of books sharing a band, each book is paired with the next ones of the bucket only,
+    // so a very common band doesn't make the number of candidates quadratic
+    private static final int MAX_BUCKET_WINDOW = 256;
+
+    private final int signatureSize;
+    private final int rows;
+    private final int bands;
+    private final long[] seeds;
+    // buckets larger than the window, and pairs of their books not paired because of it, since the creation
+    private final LongAdder truncatedBuckets = new LongAdder();
+    private final LongAdder droppedPairs = new LongAdder();
+
+    /**
+     * @param signatureSize the number of hash functions
+     * @param threshold the Jaccard similarity of the sets of stems of two books that should be found as candidates
+     * @param recall the target probability of finding two books of this similarity as candidates
+     */
+    public MinHashLsh(int signatureSize, double threshold, double recall) {
+        if (signatureSize < 1)
+            throw new IllegalArgumentException("the signature needs at least one hash function");
+        if (threshold <= 0 || threshold > 1 || recall <= 0 || recall >= 1)
+            throw new IllegalArgumentException("threshold must be in ]0, 1] and recall in ]0, 1[");
+        this.signatureSize = signatureSize;
+        int r = signatureSize;
+        while (r > 1 && candidateProbability(threshold, r, signatureSize / r) < recall)
+            r--;
+        this.rows = r;
+        this.bands = signatureSize / r;
+        Random random = new Random(signatureSize);
+        this.seeds = new long[signatureSize];
+        for (int i = 0; i < signatureSize; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    /**
+     * @return the number of buckets of books sharing a band whose books were not all paired,
+     * by all the calls of candidatePairs
+     */
+    public long getTruncatedBuckets() {
+        return truncatedBuckets.sum();
+    }
+
+    /**
+     * @return the number of pairs of books sharing a band left out by the window of the buckets,
+     * by all the calls of candidatePairs; another band may still have found some of them
+     */
+    public long getDroppedPairs() {
+        return droppedPairs.sum();
+    }
+
+    /**
+     * @param similarity a Jaccard similarity between two sets of stems
+     * @return the probability that two books of this similarity are found as candidates
+     */
+    public double getRecall(double similarity) {
+        return candidateProbability(similarity, rows, bands);
+    }
+
+    private static double candidateProbability(double similarity, int rows, int bands) {
+        return 1 - Math.pow(1 - Math.pow(similarity, rows), bands);
+    }
+
+    /**
+     * @param book the stem ids of a book
+     * @return the MinHash signature of the book
+     */
+    public int[] signature(Postings book) {
+        int[] signature = new int[signatureSize];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int i = 0; i < book.size(); i++) {
+            long stem = book.getId(i);
+            for (int f = 0; f < signatureSize; f++) {
+                int hash = (int) (mix(stem ^ seeds[f]) >>> 33);
+                if (hash < signature[f])
+                    signature[f] = hash;
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * @param signatures the signatures of the books, indexed like the books
+     * @param band a band, between 0 and getBands() - 1
+     * @return the pairs of books sharing the band, each one as (smaller index << 32 | larger index),
+     * in a bucket of more than MAX_BUCKET_WINDOW books only the pairs of books at most MAX_BUCKET_WINDOW apart
+     */
+    public long[] candidatePairs(int[][] signatures, int band) {
+        int n = signatures.length;
+        int indexBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(n - 1));
+        // (hash of the band, index of the book) sorted, so the books of a bucket are consecutive
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            long hash = band;
+            for (int r = band * rows; r < (band + 1) * rows; r++) {
+                hash = mix(hash * 31 + signatures[i][r]);
+            }
+            keys[i] = (hash >>> indexBits) << indexBits | i;
+        }
+        Arrays.sort(keys);
+
+        long mask = (1L << indexBits) - 1;
+        long[] pairs = new long[16];
+        int count = 0;
+        for (int start = 0; start < n; ) {
+            int end = start + 1;
+            while (end < n && (keys[end] >>> indexBits) == (keys[start] >>> indexBits))
+                end++;
+            int size = end - start;
+            if (size > MAX_BUCKET_WINDOW + 1) {
+                // the first books of the bucket get MAX_BUCKET_WINDOW pairs, the last ones all the others
+                long kept = (long) (size - MAX_BUCKET_WINDOW) * MAX_BUCKET_WINDOW
+                        + (long) MAX_BUCKET_WINDOW * (MAX_BUCKET_WINDOW - 1) / 2;
+                truncatedBuckets.increment();
+                droppedPairs.add((long) size * (size - 1) / 2 - kept);
+            }
+            for (int a = start; a < end; a++) {
+                for (int b = a + 1; b < end && b <= a + MAX_BUCKET_WINDOW; b++) {
+                    if (count == pairs.length)
+                        pairs = Arrays.copyOf(pairs, count * 2);
+                    // indexes are in ascending order inside a bucket
+                    pairs[count++] = (keys[a] & mask) << 32 | (keys[b] & mask);
+                }
+            }
+            start = end;
+        }
+        return Arrays.copyOf(pairs, count);
+    }
+
+    /**
+     * finalizer of MurmurHash3, spreading the bits of a long
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,139 @@
+package com.sorbonne.book_search_engine.algorithms.similarity;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The k nearest books of each book, precomputed from the distances so the suggestions don't need them in memory.
+ * The neighbors of the book of index i (books in ascending order of ids) are the ids
+ * neighbors[i * k .. i * k + count(i)), by ascending distance, with their distance at the same positions.
+ */
+public class NearestNeighbors {
+    private static final String FILE_TYPE = "KNNB";
+    private static final int FILE_VERSION = 1;
+
+    private final int k;
+    private final int[] ids;
+    private final int[] counts;
+    private final int[] neighbors;
+    private final float[] distances;
+
+    private NearestNeighbors(int k, int[] ids) {
+        this(k, ids, new int[ids.length], new int[ids.length * k], new float[ids.length * k]);
+    }
+
+    private NearestNeighbors(int k, int[] ids, int[] counts, int[] neighbors, float[] distances) {
+        this.k = k;
+        this.ids = ids;
+        this.counts = counts;
+        this.neighbors = neighbors;
+        this.distances = distances;
+    }
+
+    /**
+     * @param file the destination, as an {@link ArrayFile}: k, the ids, counts, neighbors and distances
+     * @throws IOException when error while writing to the file occurs
+     */
+    public void write(File file) throws IOException {
+        try (ArrayFile.Writer out = new ArrayFile.Writer(file, FILE_TYPE, FILE_VERSION)) {
+            out.writeInt(k);
+            out.writeInts(ids);
+            out.writeInts(counts);
+            out.writeInts(neighbors);
+            out.writeFloats(distances);
+        }
+    }
+
+    /**
+     * @param file a file written by {@link #write}
+     * @return the neighbors of the file
+     * @throws IOException when the file can't be read, or is not valid
+     */
+    public static NearestNeighbors read(File file) throws IOException {
+        try (ArrayFile.Reader in = new ArrayFile.Reader(file, FILE_TYPE, FILE_VERSION)) {
+            int k = in.readInt();
+            int[] ids = in.readInts();
+            int[] counts = in.readInts();
+            int[] neighbors = in.readInts();
+            float[] distances = in.readFloats();
+            in.checkEnd();
+            boolean valid = k >= 0 && JaccardMatrix.isAscending(ids) && counts.length == ids.length
+                    && neighbors.length == (long) ids.length * k && distances.length == neighbors.length;
+            for (int i = 0; valid && i < counts.length; i++) {
+                valid = counts[i] >= 0 && counts[i] <= k;
+            }
+            if (!valid)
+                throw new IOException(file + " is not valid nearest neighbors");
+            return new NearestNeighbors(k, ids, counts, neighbors, distances);
+        }
+    }
+
+    /**
+     * select the k nearest books of each book, books spread over a pool of threads
+     * @param distances the distances between the books
+     * @param k the number of neighbors kept per book
+     * @param threads the size of the pool
+     * @return the neighbors of all the books
+     */
+    public static NearestNeighbors compute(BookDistances distances, int k, int threads) {
+        int[] ids = new int[distances.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = distances.getId(i);
+        }
+        NearestNeighbors nearestNeighbors = new NearestNeighbors(k, ids);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> IntStream.range(0, ids.length).parallel().forEach(i -> {
+                int[] nearest = distances.getNearest(i, k);
+                nearestNeighbors.counts[i] = nearest.length;
+                for (int r = 0; r < nearest.length; r++) {
+                    nearestNeighbors.neighbors[i * k + r] = ids[nearest[r]];
+                    nearestNeighbors.distances[i * k + r] = distances.getDistance(i, nearest[r]);
+                }
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+        return nearestNeighbors;
+    }
+
+    /**
+     * @return the maximal number of neighbors of a book
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * @return the ids of the books, in ascending order
+     */
+    public int[] getIds() {
+        return ids;
+    }
+
+    /**
+     * @param id the id of a book
+     * @param limit the maximal number of books
+     * @return the ids of the nearest books, by ascending distance, empty if the book is unknown
+     */
+    public int[] getNeighbors(int id, int limit) {
+        int i = Arrays.binarySearch(ids, id);
+        if (i < 0)
+            return new int[0];
+        return Arrays.copyOfRange(neighbors, i * k, i * k + Math.max(0, Math.min(limit, counts[i])));
+    }
+
+    /**
+     * @param id the id of a book
+     * @return the distances of the nearest books, in the order of {@link #getNeighbors}
+     */
+    public float[] getDistances(int id) {
+        int i = Arrays.binarySearch(ids, id);
+        if (i < 0)
+            return new float[0];
+        return Arrays.copyOfRange(distances, i * k, i * k + counts[i]);
+    }
+}
@@ -0,0 +1,75 @@
+package com.sorbonne.book_search_engine.algorithms.similarity;
+
+import java.util.Arrays;
+
+/**
+ * Selection of the k nearest books among distances offered one by one, with a bounded max-heap of longs.
+ * A candidate is packed as (distance bits << 32 | index): distances are not negative, so the bits of a float
+ * are ordered like its value, and the packed longs are ordered by distance then by index.
+ */
+final class NearestSelector {
+    private final long[] heap;
+    private int size;
+
+    NearestSelector(int k) {
+        this.heap = new long[k];
+    }
+
+    void offer(int index, float distance) {
+        if (heap.length == 0)
+            return;
+        long candidate = (long) Float.floatToIntBits(distance) << 32 | index;
+        if (size < heap.length) {
+            heap[size] = candidate;
+            siftUp(size++);
+        } else if (candidate < heap[0]) {
+            heap[0] = candidate;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return the indexes of the selected books, by ascending distance then ascending index
+     */
+    int[] indexes() {
+        long[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted);
+        int[] indexes = new int[size];
+        for (int i = 0; i < size; i++) {
+            indexes[i] = (int) sorted[i];
+        }
+        return indexes;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[parent] >= heap[i])
+                return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && heap[left] > heap[largest])
+                largest = left;
+            if (right < size && heap[right] > heap[largest])
+                largest = right;
+            if (largest == i)
+                return;
+            swap(i, largest);
+            i = largest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+}
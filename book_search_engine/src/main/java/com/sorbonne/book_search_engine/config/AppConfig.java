@@ -1,7 +1,10 @@
 package com.sorbonne.book_search_engine.config;
 
+import com.sorbonne.book_search_engine.algorithms.regex.BookTextScanner;
+import com.sorbonne.book_search_engine.algorithms.regex.RegExCache;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.catalina.connector.Connector;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
 import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
@@ -13,6 +16,7 @@ import org.springframework.http.converter.json.MappingJackson2HttpMessageConvert
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -50,6 +54,26 @@ public class AppConfig {
         return executor;
     }
 
+    @Bean
+    public RegExCache regExCache(@Value("${regex.cache.size:16}") long tableMegabytes,
+                                 @Value("${regex.cache.terms.size:16}") long termMegabytes,
+                                 @Value("${regex.dfa.states:10000}") int maxDfaStates) {
+        return new RegExCache(tableMegabytes << 20, termMegabytes << 20, maxDfaStates);
+    }
+
+    @Bean
+    public BookTextScanner bookTextScanner(@Value("${search.fulltext.threads:0}") int threads,
+                                           @Value("${search.fulltext.mapped:4096}") int maxMappedTexts) {
+        int nThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(nThreads);
+        executor.setMaxPoolSize(nThreads);
+        executor.setThreadNamePrefix("TextScan-");
+        executor.setDaemon(true);
+        executor.initialize();
+        return new BookTextScanner(new File("books"), executor, nThreads, maxMappedTexts);
+    }
+
     @Bean
     public ConfigurableServletWebServerFactory webServerFactory() {
         TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory();
@@ -1,17 +1,24 @@
 package com.sorbonne.book_search_engine.config;
 
-import com.sorbonne.book_search_engine.algorithms.keyword.Keyword;
 import com.sorbonne.book_search_engine.algorithms.keyword.config.KeywordDictionary;
-import javafx.util.Pair;
+import com.sorbonne.book_search_engine.algorithms.similarity.ArrayFile;
+import com.sorbonne.book_search_engine.algorithms.similarity.BookDistances;
+import com.sorbonne.book_search_engine.algorithms.similarity.ClosenessRanks;
+import com.sorbonne.book_search_engine.algorithms.similarity.JaccardMatrix;
+import com.sorbonne.book_search_engine.algorithms.similarity.JaccardNeighborGraph;
+import com.sorbonne.book_search_engine.algorithms.similarity.MinHashLsh;
+import com.sorbonne.book_search_engine.algorithms.similarity.NearestNeighbors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Created by Sylvain in 2022/01.
@@ -20,83 +27,107 @@ import java.util.stream.Collectors;
 @Slf4j
 @RequiredArgsConstructor(onConstructor = @__(@Autowired))
 public class GraphRankingConfig {
-    private final KeywordDictionary keywordDictionary;
-    static HashMap<Integer, HashMap<Integer, Double>> jaccardDistanceMap;
+    private static final String CLOSENESS_FILE_TYPE = "CLOS";
+    private static final int CLOSENESS_FILE_VERSION = 1;
 
-    @Bean
-    public HashMap<Integer, Integer> jaccardMapNeighbor() throws IOException, ClassNotFoundException {
-        if (new File("jaccardNeighbor.ser").exists()){
-            log.info("Loading Jaccard Map Neighbors from file to memory...");
-            ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream("jaccardNeighbor.ser"));
-            HashMap<Integer, Integer> jaccardMapNeighbor = (HashMap<Integer, Integer>) inputStream.readObject();
-            inputStream.close();
-            return jaccardMapNeighbor;
-        }
+    // only loaded when the distances between books have to be calculated
+    private final ObjectProvider<KeywordDictionary> keywordDictionary;
 
-        log.info("Charging Jaccard Map Neighbors...");
+    /**
+     * create Bean of map of the nearest neighbor of each book
+     * {Book id, id of the closest book}
+     * @param jaccardNearestNeighbors the nearest neighbors of the books
+     * @return the map of nearest neighbors
+     */
+    @Bean
+    public HashMap<Integer, Integer> jaccardMapNeighbor(NearestNeighbors jaccardNearestNeighbors) {
         HashMap<Integer, Integer> jaccardMapNeighbor = new HashMap<>();
-        if (Objects.isNull(jaccardDistanceMap))
-            jaccardDistanceMap = calculateJaccardDistanceMap();
-        for (Map.Entry<Integer, HashMap<Integer, Double>> jaccardDistance: jaccardDistanceMap.entrySet()){
-            int id = jaccardDistance.getKey();
-            HashMap<Integer, Double> distances = jaccardDistance.getValue();
-            distances.remove(id);
-            int idNeighbor = Collections.min(distances.entrySet(), Map.Entry.comparingByValue()).getKey();
-            jaccardMapNeighbor.put(id, idNeighbor);
+        for (int id: jaccardNearestNeighbors.getIds()){
+            int[] nearest = jaccardNearestNeighbors.getNeighbors(id, 1);
+            if (nearest.length > 0)
+                jaccardMapNeighbor.put(id, nearest[0]);
         }
-
-        ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream("jaccardNeighbor.ser"));
-        outputStream.writeObject(jaccardMapNeighbor);
-        outputStream.flush();
-        outputStream.close();
-
         return jaccardMapNeighbor;
     }
 
     /**
-     * create jaccard distance matrix
-     * {Book_id_1, map{Book_id2, distance_book1_book2}}
-     * @return the jaccard distance matrix map
+     * loading the k nearest neighbors of each book from file or selecting them from the jaccard distances
+     * @param jaccardDistances provider of the jaccard distances, only loaded to select the neighbors
+     * @param k number of neighbors kept per book
+     * @param threads number of threads selecting the neighbors, 0 for the number of available processors
+     * @return the nearest neighbors of the books
      */
-    private HashMap<Integer, HashMap<Integer, Double>> calculateJaccardDistanceMap() throws IOException, ClassNotFoundException {
-
-        if (new File("jaccard.ser").exists()){
-            log.info("Loading Jaccard Distance Matrix from file to memory...");
-            ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream("jaccard.ser"));
-            HashMap<Integer, HashMap<Integer, Double>> jaccardDistanceMap = (HashMap<Integer, HashMap<Integer, Double>>) inputStream.readObject();
-            inputStream.close();
-            return jaccardDistanceMap;
+    @Bean
+    public NearestNeighbors jaccardNearestNeighbors(ObjectProvider<BookDistances> jaccardDistances,
+                                                    @Value("${similarity.neighbors:50}") int k,
+                                                    @Value("${similarity.threads:0}") int threads) throws IOException {
+        File file = new File("jaccardNearest.bin");
+        if (file.exists()){
+            log.info("Loading Jaccard Nearest Neighbors from file to memory...");
+            try {
+                NearestNeighbors nearestNeighbors = NearestNeighbors.read(file);
+                if (nearestNeighbors.getK() == k)
+                    return nearestNeighbors;
+            } catch (IOException e) {
+                log.warn("Unreadable Jaccard Nearest Neighbors, recalculating them: " + e.getMessage());
+            }
         }
 
-        log.info("Charging Jaccard Distance Matrix...");
-
-        HashMap<Integer, HashMap<Integer, Double>> jaccardDistanceMap = new HashMap<>();
-
-        HashMap<Integer, HashMap<String, Double>> keywordBookTable = keywordDictionary.getKeywordBookTable();
+        log.info("Charging Jaccard Nearest Neighbors...");
+        int nThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        NearestNeighbors nearestNeighbors = NearestNeighbors.compute(jaccardDistances.getObject(), k, nThreads);
+        nearestNeighbors.write(file);
+        return nearestNeighbors;
+    }
 
-        for (int id1: keywordBookTable.keySet()){
-            for (int id2: keywordBookTable.keySet()){
-                HashMap<String, Double> table1 = keywordBookTable.get(id1);
-                HashMap<String, Double> table2 = keywordBookTable.get(id2);
-                double distance = jaccardDistanceBetweenTable(table1, table2);
-                if (jaccardDistanceMap.containsKey(id1)){
-                    HashMap<Integer, Double> distanceId1 = jaccardDistanceMap.get(id1);
-                    distanceId1.put(id2, distance);
-                    jaccardDistanceMap.put(id1, distanceId1);
-                }else {
-                    HashMap<Integer, Double> distanceId1 = new HashMap<>();
-                    distanceId1.put(id2, distance);
-                    jaccardDistanceMap.put(id1, distanceId1);
-                }
+    /**
+     * loading the jaccard distances from file or calculating them on a pool of threads,
+     * only when the closeness or the neighbors have to be calculated
+     * @param mode "exact" for the distances between all the books, "approximate" for the distances
+     *             between the candidate pairs of books found by MinHash/LSH only
+     * @param threads number of threads calculating the distances, 0 for the number of available processors
+     * @param signatureSize approximate mode: number of MinHash functions
+     * @param threshold approximate mode: similarity of the sets of stems of two books to be found as candidates
+     * @param recall approximate mode: probability of finding two books of this similarity as candidates
+     * @return the jaccard distances
+     */
+    @Bean
+    @Lazy
+    public BookDistances jaccardDistances(@Value("${similarity.mode:exact}") String mode,
+                                          @Value("${similarity.threads:0}") int threads,
+                                          @Value("${similarity.minhash.size:128}") int signatureSize,
+                                          @Value("${similarity.lsh.threshold:0.3}") double threshold,
+                                          @Value("${similarity.lsh.recall:0.9}") double recall) throws IOException {
+        boolean approximate = "approximate".equals(mode);
+        File file = new File(approximate ? "jaccardLsh.bin" : "jaccardMatrix.bin");
+        if (file.exists()){
+            log.info("Loading Jaccard Distances (" + mode + ") from file to memory...");
+            try {
+                return approximate ? JaccardNeighborGraph.read(file) : JaccardMatrix.read(file);
+            } catch (IOException e) {
+                log.warn("Unreadable Jaccard Distances, recalculating them: " + e.getMessage());
             }
         }
 
-        ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream("jaccard.ser"));
-        outputStream.writeObject(jaccardDistanceMap);
-        outputStream.flush();
-        outputStream.close();
-        return jaccardDistanceMap;
-
+        log.info("Charging Jaccard Distances (" + mode + ")...");
+        KeywordDictionary dictionary = keywordDictionary.getObject();
+        int nThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        long start = System.currentTimeMillis();
+        BookDistances jaccardDistances;
+        if (approximate) {
+            MinHashLsh lsh = new MinHashLsh(signatureSize, threshold, recall);
+            log.info("MinHash/LSH recall for a similarity of " + threshold + ": " + lsh.getRecall(threshold));
+            JaccardNeighborGraph graph = JaccardNeighborGraph.compute(dictionary, lsh, nThreads);
+            graph.write(file);
+            jaccardDistances = graph;
+        } else {
+            JaccardMatrix matrix = JaccardMatrix.compute(dictionary, nThreads);
+            matrix.write(file);
+            jaccardDistances = matrix;
+        }
+        log.info("Calculated Jaccard distances of " + jaccardDistances.size() + " books with " + nThreads + " thread(s) in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return jaccardDistances;
     }
 
     /**
@@ -105,28 +136,26 @@ public class GraphRankingConfig {
      * @return the map of closeness centrality
      */
     @Bean
-    public Map<Integer, Double> closenessCentrality() throws IOException, ClassNotFoundException {
-        if (new File("closeness.ser").exists()){
+    public Map<Integer, Double> closenessCentrality(ObjectProvider<BookDistances> jaccardDistances) throws IOException {
+        File file = new File("closeness.bin");
+        if (file.exists()){
             log.info("Loading Closeness Centrality Ranking from file to memory...");
-            ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream("closeness.ser"));
-            Map<Integer, Double> closenessMap = (Map<Integer, Double>) inputStream.readObject();
-            inputStream.close();
-            return closenessMap;
+            try {
+                return readCloseness(file);
+            } catch (IOException e) {
+                log.warn("Unreadable Closeness Centrality Ranking, recalculating it: " + e.getMessage());
+            }
         }
 
         log.info("Charging Closeness Centrality Ranking...");
-        if (Objects.isNull(jaccardDistanceMap))
-            jaccardDistanceMap = calculateJaccardDistanceMap();
-        int numberBooks = jaccardDistanceMap.size();
-        HashMap<Integer, Double> closenessMap = new HashMap<>();
-        for (Map.Entry<Integer, HashMap<Integer, Double>> jaccardDistance: jaccardDistanceMap.entrySet()){
-            int id = jaccardDistance.getKey();
-            HashMap<Integer, Double> distances = jaccardDistance.getValue();
-            double sumDistance = distances.values().stream().mapToDouble(Double::doubleValue).sum();
-            double closeness = (numberBooks - 1) / sumDistance;
-            closenessMap.put(id, closeness);
+        BookDistances distances = jaccardDistances.getObject();
+        int numberBooks = distances.size();
+        // books are in ascending order of ids, the order kept between books of the same closeness
+        List<Map.Entry<Integer, Double>> list = new ArrayList<>();
+        for (int i = 0; i < numberBooks; i++){
+            double closeness = (numberBooks - 1) / distances.getDistanceSum(i);
+            list.add(new AbstractMap.SimpleEntry<>(distances.getId(i), closeness));
         }
-        List<Map.Entry<Integer, Double>> list = new ArrayList<>(closenessMap.entrySet());
         list.sort((o1, o2) -> o2.getValue().compareTo(o1.getValue()));
         Map<Integer, Double> result = new LinkedHashMap<>();
         for (Iterator<Map.Entry<Integer, Double>> it = list.listIterator(); it.hasNext();){
@@ -134,55 +163,50 @@ public class GraphRankingConfig {
             result.put(entry.getKey(), entry.getValue());
         }
 
-        ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream("closeness.ser"));
-        outputStream.writeObject(result);
-        outputStream.flush();
-        outputStream.close();
-
+        writeCloseness(file, result);
         return result;
     }
 
-    private static Double jaccardDistanceBetweenTable(HashMap<String, Double> table1, HashMap<String, Double> table2){
-        double dividend = 0;
-        double divisor = 0;
-
-        HashMap<String, Double> tableSmaller, tableBigger;
-        if (table1.size() > table2.size()){
-            tableBigger = table1;
-            tableSmaller = table2;
-        }else {
-            tableBigger = table2;
-            tableSmaller = table1;
-        }
-
+    /**
+     * @param closeness the closeness of the books by decreasing closeness, written as an {@link ArrayFile}
+     *                  of their ids and closeness in this order
+     */
+    private static void writeCloseness(File file, Map<Integer, Double> closeness) throws IOException {
+        int[] ids = new int[closeness.size()];
+        double[] values = new double[closeness.size()];
         int i = 0;
-        for (Map.Entry<String, Double> entry: tableBigger.entrySet()){
-            String stem = entry.getKey();
-            Double relevance1 = entry.getValue();
-            Double relevance2 = tableSmaller.get(stem);
-            if (relevance2 != null){
-                dividend += Math.max(relevance1, relevance2) - Math.min(relevance1, relevance2);
-                divisor += Math.max(relevance1, relevance2);
-            }
+        for (Map.Entry<Integer, Double> entry: closeness.entrySet()) {
+            ids[i] = entry.getKey();
+            values[i++] = entry.getValue();
         }
+        try (ArrayFile.Writer out = new ArrayFile.Writer(file, CLOSENESS_FILE_TYPE, CLOSENESS_FILE_VERSION)) {
+            out.writeInts(ids);
+            out.writeDoubles(values);
+        }
+    }
 
-        /*
-        for (int i = 0; i < Math.min(table1.size(), table2.size()); i++){
-            String stem1 = table1.get(i).getKey();
-            String stem2 = table2.get(i).getKey();
-            if (!stem1.equals(stem2)){
-                System.out.println("count: " + i);
-                break;
+    private static Map<Integer, Double> readCloseness(File file) throws IOException {
+        try (ArrayFile.Reader in = new ArrayFile.Reader(file, CLOSENESS_FILE_TYPE, CLOSENESS_FILE_VERSION)) {
+            int[] ids = in.readInts();
+            double[] values = in.readDoubles();
+            in.checkEnd();
+            if (ids.length != values.length)
+                throw new IOException(file + " is not a valid closeness ranking");
+            Map<Integer, Double> closeness = new LinkedHashMap<>();
+            for (int i = 0; i < ids.length; i++) {
+                closeness.put(ids[i], values[i]);
             }
-            double relevance1 = table1.get(i).getValue();
-            double relevance2 = table2.get(i).getValue();
-            dividend += Math.max(relevance1, relevance2) - Math.min(relevance1, relevance2);
-            divisor += Math.max(relevance1, relevance2);
+            return closeness;
         }
-         */
-        if (divisor == 0)
-            return 1.0;
-        return dividend / divisor;
+    }
 
+    /**
+     * create Bean of the rank of each book in the closeness centrality ranking, to order search results
+     * @param closenessCentrality the map of closeness centrality, by decreasing closeness
+     * @return the ranks of the books by id
+     */
+    @Bean
+    public ClosenessRanks closenessRanks(Map<Integer, Double> closenessCentrality) {
+        return new ClosenessRanks(closenessCentrality.keySet());
     }
 }
@@ -1,21 +1,43 @@
 package com.sorbonne.book_search_engine.config;
 
+import com.sorbonne.book_search_engine.algorithms.index.HeapPostingIndex;
+import com.sorbonne.book_search_engine.algorithms.index.IndexFile;
+import com.sorbonne.book_search_engine.algorithms.index.MappedPostingIndex;
+import com.sorbonne.book_search_engine.algorithms.index.PostingIndex;
+import com.sorbonne.book_search_engine.algorithms.index.Postings;
 import com.sorbonne.book_search_engine.algorithms.keyword.Keyword;
 import com.sorbonne.book_search_engine.algorithms.keyword.KeywordsExtractor;
+import com.sorbonne.book_search_engine.algorithms.keyword.StemCache;
 import com.sorbonne.book_search_engine.algorithms.keyword.StemmerLanguage;
+import com.sorbonne.book_search_engine.algorithms.keyword.Tokenizer;
 import com.sorbonne.book_search_engine.algorithms.keyword.config.KeywordDictionary;
+import com.sorbonne.book_search_engine.algorithms.keyword.config.KeywordDictionaryBuilder;
 import com.sorbonne.book_search_engine.entity.Book;
 import com.sorbonne.book_search_engine.entity.Person;
-import javafx.util.Pair;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Created by Sylvain in 2022/01.
@@ -28,121 +50,194 @@ public class IndexTableConfig {
     /**
      * loading a keyword dictionary from file or initializing a new instance by some calculation
      * @param library the (Integer, Book) library
+     * @param threads number of threads extracting keywords, 0 for the number of available processors
+     * @param stemCacheSize maximal number of words of the stem cache of each language
      * @return a Keyword Dictionary
      */
     @Bean
-    public KeywordDictionary keywordDictionary(Map<Integer, Book> library) throws IOException, ClassNotFoundException {
+    @Lazy
+    public KeywordDictionary keywordDictionary(Map<Integer, Book> library,
+                                               @Value("${index.build.threads:0}") int threads,
+                                               @Value("${index.stem.cache:65536}") int stemCacheSize) throws IOException, InterruptedException {
 
-        if (new File("keywordsDictionary.ser").exists()){
+        File indexFile = new File("keywords.idx");
+        if (indexFile.exists()){
             log.info("Loading dictionary of keywords from file to memory...");
-            ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream("keywordsDictionary.ser"));
-            KeywordDictionary dictionary = (KeywordDictionary) inputStream.readObject();
-            inputStream.close();
-            return dictionary;
+            try {
+                return toKeywordDictionary(IndexFile.read(indexFile));
+            } catch (IOException e) {
+                log.warn("Unreadable dictionary of keywords, rebuilding it: " + e.getMessage());
+            }
         }
+        return buildKeywordDictionary(library, threads, stemCacheSize, indexFile);
+    }
 
+    /**
+     * extract the keywords of the books and save them as an index file
+     * @param library the (Integer, Book) library
+     * @param threads number of threads extracting keywords, 0 for the number of available processors
+     * @param stemCacheSize maximal number of words of the stem cache of each language
+     * @param indexFile the index file, replaced
+     * @return a Keyword Dictionary
+     */
+    private static KeywordDictionary buildKeywordDictionary(Map<Integer, Book> library, int threads, int stemCacheSize,
+                                                            File indexFile) throws IOException, InterruptedException {
         log.info("Charging dictionary of keywords...");
 
-        // a map of <word, stem>
-        HashMap<String, String> word2Keyword = new HashMap<>();
-        // a map of <Stem, map <Id_book, Relevancy_Keyword_Book>>
-        HashMap<String, HashMap<Integer, Double>> keywordInBooks = new HashMap<>();
-        // a map of <Id_book, map<Stem, Relevance>>
-        HashMap<Integer, HashMap<String, Double>> keywordBookTable = new HashMap<>();
+        List<Book> books = new ArrayList<>(library.values());
+        long unsupported = books.stream().filter(book -> StemmerLanguage.of(book.getLanguages()) == null).count();
+        if (unsupported > 0)
+            log.info(unsupported + " book(s) in languages without stemmer are not indexed");
+        int nThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        long start = System.currentTimeMillis();
+        // the stems of the words of a language are cached for all the books,
+        // the cache of a language is created by the first thread meeting one of its books
+        Map<StemmerLanguage, StemCache> stemCaches = new ConcurrentHashMap<>();
+        Function<StemmerLanguage, StemCache> stemCacheOf =
+                language -> stemCaches.computeIfAbsent(language, l -> new StemCache(stemCacheSize));
+        KeywordDictionaryBuilder builder;
+        if (nThreads == 1 || books.size() < 2) {
+            builder = indexBooks(books, stemCacheOf);
+        } else {
+            builder = indexBooksInParallel(books, nThreads, stemCacheOf);
+        }
+        log.info("Extracted keywords of " + books.size() + " books with " + nThreads + " thread(s) in "
+                + (System.currentTimeMillis() - start) + " ms");
+        for (StemmerLanguage language : StemmerLanguage.values()) {
+            StemCache stemCache = stemCaches.get(language);
+            if (stemCache != null)
+                log.info(String.format("Stem cache (%s): %.1f%% hits, %d words stemmed",
+                        language.getCode(), 100 * stemCache.getHitRate(), stemCache.getMisses()));
+        }
 
-        FileReader reader;
+        KeywordDictionary dictionary = builder.build();
+        writeKeywordIndex(indexFile, dictionary);
+        return dictionary;
+    }
 
-        StemmerLanguage languageEn = StemmerLanguage.ENGLISH;
-        StemmerLanguage languageFr = StemmerLanguage.FRENCH;
-        KeywordsExtractor extractorEn = new KeywordsExtractor(languageEn);
-        KeywordsExtractor extractorFr = new KeywordsExtractor(languageFr);
-        List<Keyword> keywords;
-        for (Book book: library.values()){
-            int bookId = book.getId();
-            String bookText = "books/" + bookId + ".txt";
+    /**
+     * open the index of keywords used by searches: words leading to the weighted posting lists of their stems.
+     * The keywords are only extracted when the index file doesn't exist yet or can't be read,
+     * the keyword dictionary then loads the new file when it is needed.
+     * @param library the (Integer, Book) library
+     * @param threads number of threads extracting keywords, 0 for the number of available processors
+     * @param stemCacheSize maximal number of words of the stem cache of each language
+     * @param mode "heap" to decode all the posting lists in memory, "mapped" to read them from the mapped file
+     * @return the index of keywords
+     */
+    @Bean
+    public PostingIndex keywordIndex(Map<Integer, Book> library,
+                                     @Value("${index.build.threads:0}") int threads,
+                                     @Value("${index.stem.cache:65536}") int stemCacheSize,
+                                     @Value("${index.mode:heap}") String mode) throws IOException, InterruptedException {
+        File indexFile = new File("keywords.idx");
+        if (indexFile.exists()) {
+            log.info("Loading index of keywords from file (" + mode + ")...");
             try {
-                reader = new FileReader(bookText);
-                if (book.getLanguages().contains("en")) {
-                    keywords = extractorEn.extract(reader);
-                }
-                else if (book.getLanguages().contains("fr")){
-                    keywords = extractorFr.extract(reader);
-                }else {
-                    continue;
-                }
-                for (Keyword keyword: keywords){
-                    String stem = keyword.getStem();
-                    Set<String> words = keyword.getWords();
-                    double relevance = keyword.getRelevance();
-
-                    // word2Keyword
-                    for (String word: words){
-                        word2Keyword.put(word, stem);
-                    }
+                return openIndex(indexFile, mode);
+            } catch (IOException e) {
+                log.warn("Unreadable index of keywords, rebuilding it: " + e.getMessage());
+                // a new file, rather than the one which may still be mapped
+                Files.delete(indexFile.toPath());
+            }
+        }
+        buildKeywordDictionary(library, threads, stemCacheSize, indexFile);
+        return openIndex(indexFile, mode);
+    }
 
-                    // keywordInBooks
-                    if (keywordInBooks.containsKey(stem)){
-                        HashMap<Integer, Double> keywordRelevance = keywordInBooks.get(stem);
-                        keywordRelevance.put(bookId, relevance);
-                        keywordInBooks.put(stem, keywordRelevance);
-                    }else {
-                        HashMap<Integer, Double> keywordRelevance = new HashMap<>();
-                        keywordRelevance.put(bookId, relevance);
-                        keywordInBooks.put(stem, keywordRelevance);
-                    }
+    /**
+     * split the books in shards of consecutive books, extract the keywords of each shard on a pool of threads,
+     * then merge the shards in the order of the books
+     * @param books the books to index
+     * @param nThreads the size of the pool
+     * @param stemCacheOf the stem cache of a language, shared by the threads
+     * @return a builder containing the keywords of all the books
+     */
+    private static KeywordDictionaryBuilder indexBooksInParallel(List<Book> books, int nThreads,
+                                                                 Function<StemmerLanguage, StemCache> stemCacheOf) throws InterruptedException {
+        // more shards than threads, so a shard of big books doesn't keep the other threads waiting
+        int nShards = Math.min(books.size(), nThreads * 4);
+        int shardSize = (books.size() + nShards - 1) / nShards;
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<KeywordDictionaryBuilder>> shards = new ArrayList<>();
+            for (int from = 0; from < books.size(); from += shardSize) {
+                List<Book> shard = books.subList(from, Math.min(from + shardSize, books.size()));
+                shards.add(executor.submit(() -> indexBooks(shard, stemCacheOf)));
+            }
+            KeywordDictionaryBuilder builder = null;
+            for (Future<KeywordDictionaryBuilder> shard : shards) {
+                KeywordDictionaryBuilder partial = shard.get();
+                if (builder == null)
+                    builder = partial;
+                else
+                    builder.merge(partial);
+            }
+            return builder;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error while extracting keywords", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-                    // keywordBookTable, in fact, a reverse version of keywordInBooks
-                    if (keywordBookTable.containsKey(bookId)){
-                        HashMap<String, Double> stemRelevanceMap = keywordBookTable.get(bookId);
-                        stemRelevanceMap.put(stem, relevance);
-                        keywordBookTable.put(bookId, stemRelevanceMap);
-                    }else {
-                        HashMap<String, Double> stemRelevanceMap = new HashMap<>();
-                        stemRelevanceMap.put(stem, relevance);
-                        keywordBookTable.put(bookId, stemRelevanceMap);
-                    }
-                }
+    /**
+     * extract the keywords of some books, with extractors owned by the calling thread
+     * @param books the books to index
+     * @param stemCacheOf the stem cache of a language
+     * @return a builder containing the keywords of the books
+     */
+    private static KeywordDictionaryBuilder indexBooks(List<Book> books, Function<StemmerLanguage, StemCache> stemCacheOf){
+        KeywordDictionaryBuilder builder = new KeywordDictionaryBuilder();
 
+        // the extractor of a language is created for its first book
+        Map<StemmerLanguage, KeywordsExtractor> extractors = new EnumMap<>(StemmerLanguage.class);
+        for (Book book: books){
+            StemmerLanguage language = StemmerLanguage.of(book.getLanguages());
+            if (language == null)
+                continue;
+            KeywordsExtractor extractor = extractors.computeIfAbsent(language,
+                    l -> new KeywordsExtractor(l, stemCacheOf.apply(l)));
+            int bookId = book.getId();
+            Path bookText = Paths.get("books", bookId + ".txt");
+            // the text is mapped and decoded by blocks, the mapping stays valid once the channel is closed
+            try (FileChannel channel = FileChannel.open(bookText, StandardOpenOption.READ)) {
+                MappedByteBuffer text = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                List<Keyword> keywords = extractor.extract(text);
+                builder.addBook(bookId, keywords);
             } catch (IOException e) {
-                e.printStackTrace();
+                log.warn("Unreadable book " + bookId, e);
             }
         }
-
-        KeywordDictionary dictionary = new KeywordDictionary(word2Keyword, keywordInBooks, keywordBookTable);
-        ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream("keywordsDictionary.ser"));
-        outputStream.writeObject(dictionary);
-        outputStream.flush();
-        outputStream.close();
-        return dictionary;
+        return builder;
     }
 
     /**
      * loading a title dictionary from file or initializing a new instance by some calculation
      * @param library the (Integer, Book) library
-     * @return HashMap<String, HashSet<Integer>>: key for keyword, value for ids of books containing the keyword
+     * @param mode "heap" to decode all the posting lists in memory, "mapped" to read them from the mapped file
+     * @return PostingIndex: key for keyword, value for ids of books containing the keyword
      */
     @Bean
-    public HashMap<String, HashSet<Integer>> titleDictionary(Map<Integer, Book> library) throws IOException, ClassNotFoundException {
-        if (new File("titles.ser").exists()){
+    public PostingIndex titleDictionary(Map<Integer, Book> library, @Value("${index.mode:heap}") String mode) throws IOException {
+        File indexFile = new File("titles.idx");
+        if (indexFile.exists()){
             log.info("Loading index table of titles from file to memory...");
-            ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream("titles.ser"));
-            HashMap<String, HashSet<Integer>> titleDictionary = (HashMap<String, HashSet<Integer>>) inputStream.readObject();
-            inputStream.close();
-            return titleDictionary;
+            try {
+                return openIndex(indexFile, mode);
+            } catch (IOException e) {
+                log.warn("Unreadable index table of titles, rebuilding it: " + e.getMessage());
+            }
         }
 
         log.info("Charging index tables of titles...");
         HashMap<String, HashSet<Integer>> titleDictionary = new HashMap<>();
         for (Book book: library.values()){
             String title = book.getTitle();
-            String languageCode;
-            if(book.getLanguages().contains("en")){
-                languageCode = "en";
-            }else if (book.getLanguages().contains("fr")){
-                languageCode = "fr";
-            }else {
+            StemmerLanguage language = StemmerLanguage.of(book.getLanguages());
+            if (language == null)
                 continue;
-            }
+            String languageCode = language.getCode();
             HashSet<String> words = splitWords(title, languageCode);
             for (String word: words) {
                 if (titleDictionary.containsKey(word)){
@@ -156,40 +251,36 @@ public class IndexTableConfig {
                 }
             }
         }
-        ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream("titles.ser"));
-        outputStream.writeObject(titleDictionary);
-        outputStream.flush();
-        outputStream.close();
-        return titleDictionary;
+        writeIdIndex(indexFile, titleDictionary);
+        return openIndex(indexFile, mode);
     }
 
     /**
      * loading an author dictionary from file or initializing a new instance by some calculation
      * @param library the (Integer, Book) library
-     * @return HashMap<String, HashSet<Integer>>: key for keyword, value for ids of books' authors containing the keyword
+     * @param mode "heap" to decode all the posting lists in memory, "mapped" to read them from the mapped file
+     * @return PostingIndex: key for keyword, value for ids of books' authors containing the keyword
      */
     @Bean
-    public HashMap<String, HashSet<Integer>> authorDictionary(Map<Integer, Book> library) throws IOException, ClassNotFoundException{
-        if (new File("authors.ser").exists()){
+    public PostingIndex authorDictionary(Map<Integer, Book> library, @Value("${index.mode:heap}") String mode) throws IOException {
+        File indexFile = new File("authors.idx");
+        if (indexFile.exists()){
             log.info("Loading index table of authors from file to memory...");
-            ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream("authors.ser"));
-            HashMap<String, HashSet<Integer>> titleDictionary = (HashMap<String, HashSet<Integer>>) inputStream.readObject();
-            inputStream.close();
-            return titleDictionary;
+            try {
+                return openIndex(indexFile, mode);
+            } catch (IOException e) {
+                log.warn("Unreadable index table of authors, rebuilding it: " + e.getMessage());
+            }
         }
 
         log.info("Charging index tables of authors...");
         HashMap<String, HashSet<Integer>> authorDictionary = new HashMap<>();
         for (Book book: library.values()){
             ArrayList<Person> authors = book.getAuthors();
-            String languageCode;
-            if(book.getLanguages().contains("en")){
-                languageCode = "en";
-            }else if (book.getLanguages().contains("fr")){
-                languageCode = "fr";
-            }else {
+            StemmerLanguage language = StemmerLanguage.of(book.getLanguages());
+            if (language == null)
                 continue;
-            }
+            String languageCode = language.getCode();
             HashSet<String> words = new HashSet<>();
             for (Person author: authors) {
                 words.addAll(splitWords(author.getName(), languageCode));
@@ -206,11 +297,44 @@ public class IndexTableConfig {
                 }
             }
         }
-        ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream("authors.ser"));
-        outputStream.writeObject(authorDictionary);
-        outputStream.flush();
-        outputStream.close();
-        return authorDictionary;
+        writeIdIndex(indexFile, authorDictionary);
+        return openIndex(indexFile, mode);
+    }
+
+    /**
+     * write a keyword dictionary as an index file: stems with their weighted posting lists, words as aliases of stems
+     * (the per-book table is not written, it's the mirror of the posting lists)
+     */
+    private static void writeKeywordIndex(File file, KeywordDictionary dictionary) throws IOException {
+        SortedMap<String, Postings> index = new TreeMap<>();
+        for (int i = 0; i < dictionary.getStemCount(); i++) {
+            index.put(dictionary.getStem(i), dictionary.getStemPostings(i));
+        }
+        SortedMap<String, String> aliases = new TreeMap<>();
+        for (int i = 0; i < dictionary.getWords().length; i++) {
+            aliases.put(dictionary.getWords()[i], dictionary.getStem(dictionary.getWordStems()[i]));
+        }
+        IndexFile.write(file, index, aliases);
+    }
+
+    private static KeywordDictionary toKeywordDictionary(IndexFile indexFile){
+        return new KeywordDictionary(indexFile.getAliases(), indexFile.getAliasTargets(),
+                indexFile.getTerms(), indexFile.getPostings());
+    }
+
+    private static void writeIdIndex(File file, HashMap<String, HashSet<Integer>> dictionary) throws IOException {
+        SortedMap<String, Postings> index = new TreeMap<>();
+        for (Map.Entry<String, HashSet<Integer>> entry: dictionary.entrySet()){
+            int[] ids = entry.getValue().stream().mapToInt(Integer::intValue).sorted().toArray();
+            index.put(entry.getKey(), new Postings(ids, null));
+        }
+        IndexFile.write(file, index, null);
+    }
+
+    private static PostingIndex openIndex(File file, String mode) throws IOException {
+        if ("mapped".equals(mode))
+            return MappedPostingIndex.open(file);
+        return new HeapPostingIndex(IndexFile.read(file));
     }
 
     /**
@@ -221,11 +345,13 @@ public class IndexTableConfig {
      */
     public static HashSet<String> splitWords(String text, String languageCode) throws IOException {
         Set<Character> alphabet = getAlphabet(languageCode);
+        // without an alphabet file, the words are made of letters and of the marks combined with them
+        Predicate<Character> isInAlphabet = alphabet.isEmpty() ? Tokenizer::isLetterOrMark : alphabet::contains;
         HashSet<String> words = new HashSet<>();
         StringBuilder currentWord = new StringBuilder();
         for (int i = 0; i < text.length(); i++) { //browsing the text, char by char
             char c = Character.toLowerCase(text.charAt(i));
-            if (alphabet.contains(c)) { //if current char is in the alphabet (which is not a space, a point, etc)
+            if (isInAlphabet.test(c)) { //if current char is in the alphabet (which is not a space, a point, etc)
                 currentWord.append(c); //it is the next char of the current word
             } else {                   //else we have a word!
                 String word = currentWord.toString();
@@ -242,16 +368,15 @@ public class IndexTableConfig {
         return words;
     }
 
+    /**
+     * @return the chars of the words of a language, empty if the language has no alphabet file
+     */
     public static Set<Character> getAlphabet(String languageCode){
         Set<Character> alphabet = new HashSet<>();
-        String filename = "language/" + languageCode + "/alphabet.txt";
-        BufferedReader reader = null;
-        try {
-            reader = new BufferedReader(new FileReader(filename));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
-        try {
+        File file = new File("language/" + languageCode + "/alphabet.txt");
+        if (!file.exists())
+            return alphabet;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
             String line = reader.readLine();
             while (line != null) {
                 alphabet.add(line.charAt(0));
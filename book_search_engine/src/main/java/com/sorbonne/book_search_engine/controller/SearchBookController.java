@@ -6,6 +6,7 @@ import com.sorbonne.book_search_engine.service.SearchBookService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import javax.validation.constraints.NotBlank;
@@ -13,8 +14,10 @@ import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Created by Sylvain in 2022/01.
@@ -26,6 +29,9 @@ import java.util.*;
 @Slf4j
 public class SearchBookController {
     private final SearchBookService searchBookService;
+    // milliseconds before a full-text search is cancelled
+    @Value("${search.fulltext.timeout:60000}")
+    private long fullTextTimeout;
 
     /**
      * GET books page by page
@@ -53,25 +59,38 @@ public class SearchBookController {
             return ResponseEntity.notFound().build();
     }
 
+    /**
+     * GET the books most similar to a book
+     * @param id the book's id
+     * @param limit the maximal number of books, 10 by default
+     * @return ResponseEntity<List<Book>> the similar books by ascending jaccard distance, or a 404 error if id not found
+     */
+    @GetMapping("/books/{id}/similar")
+    public ResponseEntity<List<Book>> similarBooks(@PathVariable(required = true) int id,
+                                                   @RequestParam(name = "limit", required = false, defaultValue = "10") int limit){
+        log.info("GET /books/" + id + "/similar?limit=" + limit);
+        if (searchBookService.getBookById(id) == null)
+            return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(searchBookService.getSimilarBooks(id, limit));
+    }
+
     /**
      * GET books by searching keyword or regex in its content
      * @param content the keyword or regex string
      * @param closeness boolean, ordered by closeness centrality or not, by default is not (ordered by relevance score to keyword)
+     * @param limit the maximal number of books, 0 by default for all of them
      * @return ResponseEntity<List<Book>>
      */
     @GetMapping(value = "/books", params = "search")
     public ResponseEntity<List<Book>> booksByWord(@NotBlank @NotNull @RequestParam(name = "search", required = true) String content,
-                                                  @RequestParam(name = "closeness", required = false, defaultValue = "false") boolean closeness){
-        log.info("GET /books?search=" + content + "&closeness=" + closeness);
+                                                  @RequestParam(name = "closeness", required = false, defaultValue = "false") boolean closeness,
+                                                  @RequestParam(name = "limit", required = false, defaultValue = "0") int limit){
+        log.info("GET /books?search=" + content + "&closeness=" + closeness + (limit > 0 ? "&limit=" + limit : ""));
 
         // search books by keyword, that's to say `content` is not regarded as an regex
         String[] words = content.split("\\s+");
-        List<List<Book>> resultsKeyword = new ArrayList<>();
-
-        for (String word: words) {
-            resultsKeyword.add(searchBookService.getBooksByWord(word));
-        }
-        List<Book> resultKeyword = retainIntersection(resultsKeyword);
+        // without ordering by closeness, only the most relevant books are needed
+        List<Book> resultKeyword = searchBookService.getBooksByWords(words, limit > 0 && !closeness ? limit : Integer.MAX_VALUE);
 
         // search books by regex, that's to say `content` is regarded as an regex
         List<Book> resultRegex = new ArrayList<>(searchBookService.getBooksByRegex(content));
@@ -80,10 +99,44 @@ public class SearchBookController {
         List<Book> finalUniqueResult = unionAndRemoveDuplicates(resultKeyword, resultRegex);
 
         if (closeness)
-            finalUniqueResult = searchBookService.orderBooksByCloseness(finalUniqueResult);
+            finalUniqueResult = searchBookService.orderBooksByCloseness(finalUniqueResult, limit > 0 ? limit : Integer.MAX_VALUE);
+        else if (limit > 0 && finalUniqueResult.size() > limit)
+            finalUniqueResult = finalUniqueResult.subList(0, limit);
         return ResponseEntity.ok(finalUniqueResult);
     }
 
+    /**
+     * GET books by searching a regex in their whole texts instead of their keywords,
+     * the scan of the texts is cancelled after search.fulltext.timeout milliseconds (503 error) or when the
+     * asynchronous request fails: a client disconnecting is only noticed by the server when it writes the result
+     * @param content the regex string
+     * @param closeness boolean, ordered by closeness centrality or not, by default is not (ordered by id)
+     * @param limit the maximal number of books, 0 by default for all of them
+     * @return DeferredResult<ResponseEntity<List<Book>>>
+     */
+    @GetMapping(value = "/books", params = {"search", "fulltext=true"})
+    public DeferredResult<ResponseEntity<List<Book>>> booksByText(@NotBlank @NotNull @RequestParam(name = "search", required = true) String content,
+                                                                  @RequestParam(name = "closeness", required = false, defaultValue = "false") boolean closeness,
+                                                                  @RequestParam(name = "limit", required = false, defaultValue = "0") int limit){
+        log.info("GET /books?search=" + content + "&fulltext=true&closeness=" + closeness + (limit > 0 ? "&limit=" + limit : ""));
+        // with ordering by closeness, all the books are needed
+        CompletableFuture<List<Book>> books = searchBookService.getBooksByRegexInText(content,
+                limit > 0 && !closeness ? limit : Integer.MAX_VALUE);
+        DeferredResult<ResponseEntity<List<Book>>> result = new DeferredResult<>(fullTextTimeout);
+        result.onTimeout(() -> books.cancel(false));
+        result.onError(e -> books.cancel(false));
+        books.whenComplete((list, e) -> {
+            if (e != null) {
+                result.setErrorResult(e);
+                return;
+            }
+            if (closeness)
+                list = searchBookService.orderBooksByCloseness(list, limit > 0 ? limit : Integer.MAX_VALUE);
+            result.setResult(ResponseEntity.ok(list));
+        });
+        return result;
+    }
+
     /**
      * GET books by searching keyword or regex in its titles
      * @param content the keyword or regex string
@@ -96,11 +149,7 @@ public class SearchBookController {
         log.info("GET /books?searchByTitle=" + content + "&closeness=" + closeness);
         // search books by regex, that's to say `content` is regarded as an regex
         String[] words = content.split("\\s+");
-        List<List<Book>> resultsKeyword = new ArrayList<>();
-        for (String word: words) {
-            resultsKeyword.add(searchBookService.getBooksByTitle(word));
-        }
-        List<Book> resultKeyword = retainIntersection(resultsKeyword);
+        List<Book> resultKeyword = searchBookService.getBooksByTitleWords(words);
         // search books by regex, that's to say `content` is regarded as an regex
         List<Book> resultRegex = new ArrayList<>(searchBookService.getBooksByRegexInTitle(content));
         // remove duplicates of resultKeyword & resultRegex and make union
@@ -123,11 +172,7 @@ public class SearchBookController {
         log.info("GET /books?searchByAuthor=" + content + "&closeness=" + closeness);
         // search books by regex, that's to say `content` is regarded as an regex
         String[] words = content.split("\\s+");
-        List<List<Book>> resultsKeyword = new ArrayList<>();
-        for (String word: words) {
-            resultsKeyword.add(searchBookService.getBooksByAuthor(word));
-        }
-        List<Book> resultKeyword = retainIntersection(resultsKeyword);
+        List<Book> resultKeyword = searchBookService.getBooksByAuthorWords(words);
         // search books by regex, that's to say `content` is regarded as an regex
         List<Book> resultRegex = new ArrayList<>(searchBookService.getBooksByRegexInAuthor(content));
         // remove duplicates of resultKeyword & resultRegex and make union
@@ -149,17 +194,6 @@ public class SearchBookController {
         return ResponseEntity.ok(searchBookService.getNeighborBookByJaccard(bookId));
     }
 
-    private List<Book> retainIntersection(List<List<Book>> results) {
-        Optional<List<Book>> resultKeywords = results.parallelStream()
-                .filter(bookList -> bookList != null && bookList.size() != 0)
-                .reduce((a, b) -> {
-                    a.retainAll(b);
-                    return a;
-                });
-
-        return resultKeywords.orElse(new ArrayList<>());
-    }
-
     @SafeVarargs
     private final List<Book> unionAndRemoveDuplicates(List<Book>... lists){
         HashSet<Book> uniqueBooks = new HashSet<>();
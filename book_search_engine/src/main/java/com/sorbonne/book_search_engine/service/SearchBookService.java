@@ -1,14 +1,16 @@
 package com.sorbonne.book_search_engine.service;
 
+import com.sorbonne.book_search_engine.algorithms.index.PostingIndex;
+import com.sorbonne.book_search_engine.algorithms.index.Postings;
+import com.sorbonne.book_search_engine.algorithms.index.PostingsIntersection;
 import com.sorbonne.book_search_engine.algorithms.keyword.Keyword;
-import com.sorbonne.book_search_engine.algorithms.keyword.config.KeywordDictionary;
-import com.sorbonne.book_search_engine.algorithms.regex.DFA;
-import com.sorbonne.book_search_engine.algorithms.regex.DFAState;
-import com.sorbonne.book_search_engine.algorithms.regex.NFA;
-import com.sorbonne.book_search_engine.algorithms.regex.RegExTree;
+import com.sorbonne.book_search_engine.algorithms.regex.BookTextScanner;
+import com.sorbonne.book_search_engine.algorithms.regex.RegExCache;
+import com.sorbonne.book_search_engine.algorithms.regex.RegExMatcher;
+import com.sorbonne.book_search_engine.algorithms.similarity.ClosenessRanks;
+import com.sorbonne.book_search_engine.algorithms.similarity.NearestNeighbors;
 import com.sorbonne.book_search_engine.entity.Book;
 import com.sorbonne.book_search_engine.entity.Result;
-import javafx.util.Pair;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,10 +18,9 @@ import org.springframework.beans.support.PagedListHolder;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
-import static com.sorbonne.book_search_engine.algorithms.regex.RegEx.parse;
-
 /**
  * Created by Sylvain in 2022/01.
  */
@@ -29,12 +30,15 @@ import static com.sorbonne.book_search_engine.algorithms.regex.RegEx.parse;
 public class SearchBookService {
     private final Map<Integer, Book> library;
     private final PagedListHolder<Book> pagedLibrary;
-    private final KeywordDictionary keywordDictionary;
-    private final HashMap<String, HashSet<Integer>> titleDictionary;
-    private final HashMap<String, HashSet<Integer>> authorDictionary;
+    private final PostingIndex keywordIndex;
+    private final PostingIndex titleDictionary;
+    private final PostingIndex authorDictionary;
     //private final HashMap<Integer, HashMap<Integer, Double>> jaccardDistanceMap;
     private final HashMap<Integer, Integer> jaccardMapNeighbor;
-    private final Map<Integer, Double> closenessCentrality;
+    private final NearestNeighbors jaccardNearestNeighbors;
+    private final ClosenessRanks closenessRanks;
+    private final RegExCache regExCache;
+    private final BookTextScanner bookTextScanner;
 
     /**
      * return books on a specific page of pagedLibrary
@@ -68,25 +72,30 @@ public class SearchBookService {
     /**
      * search books containing words having the stem of keyword given in parameter
      * @param word the keyword to search in books
-     * @return a list of books
+     * @return a list of books, ordered by relevancy
      */
     public List<Book> getBooksByWord(String word){
-        String stem = keywordDictionary.getWord2Keyword().get(word.toLowerCase(Locale.ROOT));
-        if (stem == null)
-            return new ArrayList<>();
-        HashMap<Integer, Double> result = keywordDictionary.getKeywordInBooks().get(stem);
-        // sort the result by relevancy
-        result = result.entrySet().stream()
-                .sorted((e1, e2) -> - (e1.getValue().compareTo(e2.getValue())))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (e1, e2) -> e1, LinkedHashMap::new));
+        return getBooksByWord(word, Integer.MAX_VALUE);
+    }
 
+    /**
+     * search the most relevant books containing words having the stem of keyword given in parameter,
+     * posting lists are already ordered by relevancy in the index
+     * @param word the keyword to search in books
+     * @param limit the maximal number of books
+     * @return a list of books, ordered by relevancy
+     */
+    public List<Book> getBooksByWord(String word, int limit){
+        int termId = keywordIndex.getTermId(word.toLowerCase(Locale.ROOT));
+        if (termId < 0)
+            return new ArrayList<>();
         List<Book> list = new ArrayList<>();
-        for (Integer id: result.keySet()) {
+        for (int id: keywordIndex.getIdsByRelevance(termId, limit)) {
             Book book = getBookById(id);
-            list.add(book);
+            if (book != null)
+                list.add(book);
         }
-        return list.stream().filter(Objects::nonNull).collect(Collectors.toList());
-
+        return list;
     }
 
     /**
@@ -95,15 +104,7 @@ public class SearchBookService {
      * @return a list of books
      */
     public List<Book> getBooksByTitle(String word){
-        HashSet<Integer> result = titleDictionary.getOrDefault(word.toLowerCase(Locale.ROOT), new HashSet<>());
-        if (result.isEmpty())
-            return new ArrayList<>();
-        List<Book> list = new ArrayList<>();
-        for (Integer id: result) {
-            Book book = getBookById(id);
-            list.add(book);
-        }
-        return list.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        return getBooksByPostings(titleDictionary.getPostings(word.toLowerCase(Locale.ROOT)));
     }
 
     /**
@@ -112,15 +113,35 @@ public class SearchBookService {
      * @return a list of books
      */
     public List<Book> getBooksByAuthor(String word){
-        HashSet<Integer> result = authorDictionary.getOrDefault(word.toLowerCase(Locale.ROOT), new HashSet<>());
-        if (result.isEmpty())
-            return new ArrayList<>();
-        List<Book> list = new ArrayList<>();
-        for (Integer id: result) {
-            Book book = getBookById(id);
-            list.add(book);
-        }
-        return list.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        return getBooksByPostings(authorDictionary.getPostings(word.toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * search books containing all the keywords given in parameter, words without any book being ignored
+     * @param words the keywords to search in books
+     * @param limit the maximal number of books
+     * @return a list of books, ordered by relevancy to the first keyword
+     */
+    public List<Book> getBooksByWords(String[] words, int limit){
+        return getBooksByAllTerms(keywordIndex, words, limit);
+    }
+
+    /**
+     * search books with titles containing all the words given in parameter, words without any book being ignored
+     * @param words the words to search in books' titles
+     * @return a list of books, in the order of their ids
+     */
+    public List<Book> getBooksByTitleWords(String[] words){
+        return getBooksByAllTerms(titleDictionary, words, Integer.MAX_VALUE);
+    }
+
+    /**
+     * search books with authors containing all the words given in parameter, words without any book being ignored
+     * @param words the words to search in books' authors
+     * @return a list of books, in the order of their ids
+     */
+    public List<Book> getBooksByAuthorWords(String[] words){
+        return getBooksByAllTerms(authorDictionary, words, Integer.MAX_VALUE);
     }
 
     /**
@@ -129,28 +150,55 @@ public class SearchBookService {
      * @return a list of books
      */
     public List<Book> getBooksByRegex(String regEx){
-        HashMap<String, String> word2Keywords = keywordDictionary.getWord2Keyword();
-        HashSet<String> candidats = new HashSet<>(word2Keywords.keySet());
-        HashSet<String> words = getWordsByRegEx(candidats, regEx.toLowerCase(Locale.ROOT));
+        int[] termIds = getTermsByRegEx(keywordIndex, regEx.toLowerCase(Locale.ROOT));
         List<List<Book>> listBooks = new ArrayList<>();
-        for (String word: words){
-            listBooks.add(getBooksByWord(word));
+        for (int termId: termIds){
+            listBooks.add(getBooksByWord(keywordIndex.getTerm(termId)));
         }
         List<Book> result = unionAndRemoveDuplicates(listBooks);
         return result.stream().filter(Objects::nonNull).collect(Collectors.toList());
     }
 
+    /**
+     * search books whose whole text matches the regex given in parameter, not only their keywords
+     * @param regEx the regex to match in books' texts
+     * @param limit the maximal number of books, the search stops once they are found
+     * @return a future list of books, in the order of their ids, to cancel to stop the search
+     */
+    public CompletableFuture<List<Book>> getBooksByRegexInText(String regEx, int limit){
+        RegExMatcher matcher;
+        String literal;
+        try {
+            matcher = regExCache.get(regEx);
+            literal = regExCache.getRequiredLiteral(regEx);
+        } catch (Exception e) {
+            log.info("Error parsing RegEx: " + regEx);
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        int[] bookIds = library.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        CompletableFuture<int[]> scan = bookTextScanner.find(bookIds, matcher, literal, limit);
+        CompletableFuture<List<Book>> books = scan.thenApply(ids -> {
+            List<Book> list = new ArrayList<>();
+            for (int id: ids) {
+                list.add(getBookById(id));
+            }
+            return list;
+        });
+        // cancelling the books stops the scan
+        books.whenComplete((list, e) -> scan.cancel(false));
+        return books;
+    }
+
     /**
      * search books with title containing text matching the regex given in parameter
      * @param regEx the regex to match in books' title
      * @return a list of books
      */
     public List<Book> getBooksByRegexInTitle(String regEx){
-        HashSet<String> candidats = new HashSet<>(titleDictionary.keySet());
-        HashSet<String> words = getWordsByRegEx(candidats, regEx.toLowerCase(Locale.ROOT));
+        int[] termIds = getTermsByRegEx(titleDictionary, regEx.toLowerCase(Locale.ROOT));
         List<List<Book>> listBooks = new ArrayList<>();
-        for (String word: words){
-            listBooks.add(getBooksByTitle(word));
+        for (int termId: termIds){
+            listBooks.add(getBooksByPostings(titleDictionary.getPostings(termId)));
         }
         List<Book> result = unionAndRemoveDuplicates(listBooks);
         return result.stream().filter(Objects::nonNull).collect(Collectors.toList());
@@ -162,11 +210,10 @@ public class SearchBookService {
      * @return a list of books
      */
     public List<Book> getBooksByRegexInAuthor(String regEx){
-        HashSet<String> candidats = new HashSet<>(authorDictionary.keySet());
-        HashSet<String> words = getWordsByRegEx(candidats, regEx.toLowerCase(Locale.ROOT));
+        int[] termIds = getTermsByRegEx(authorDictionary, regEx.toLowerCase(Locale.ROOT));
         List<List<Book>> listBooks = new ArrayList<>();
-        for (String word: words){
-            listBooks.add(getBooksByAuthor(word));
+        for (int termId: termIds){
+            listBooks.add(getBooksByPostings(authorDictionary.getPostings(termId)));
         }
         List<Book> result = unionAndRemoveDuplicates(listBooks);
         return result.stream().filter(Objects::nonNull).collect(Collectors.toList());
@@ -178,84 +225,119 @@ public class SearchBookService {
      * @return a list of books
      */
     public List<Book> orderBooksByCloseness(List<Book> books){
-        List<Integer> orderedIds = new ArrayList<>(closenessCentrality.keySet());
-        books.sort(Comparator.comparing(book -> orderedIds.indexOf(book.getId())));
-        return books;
+        return orderBooksByCloseness(books, Integer.MAX_VALUE);
     }
 
     /**
-     * //get some similar books of books given in parameter
-     * //@param ids the books' id to search for some other similar books
-     * //@return a list books
+     * get the books of a list having the highest closeness centrality, in descended order
+     * @param books the list of books to be ordered
+     * @param limit the maximal number of books
+     * @return a list of books
      */
-    /*
-    public List<Book> getNeighborBooksByJaccard(List<Integer> ids){
-        HashSet<Integer> neighborIds = new HashSet<>();
-        for (Integer id: ids){
-            HashMap<Integer, Double> distances = jaccardDistanceMap.get(id);
-            distances.remove(id);
-            Integer id2 = Collections.min(distances.entrySet(), Map.Entry.comparingByValue()).getKey();
-            neighborIds.add(id2);
-        }
+    public List<Book> orderBooksByCloseness(List<Book> books, int limit){
+        return closenessRanks.order(books, Book::getId, limit);
+    }
+
+    /**
+     * get the books most similar to a book, from the precomputed nearest neighbors
+     * @param id the id of the book
+     * @param limit the maximal number of books
+     * @return a list of books, by ascending jaccard distance
+     */
+    public List<Book> getSimilarBooks(int id, int limit){
         List<Book> result = new ArrayList<>();
-        neighborIds.forEach(id -> result.add(getBookById(id)));
-        return result.stream().filter(Objects::nonNull).collect(Collectors.toList());
-    }*/
+        for (int neighborId: jaccardNearestNeighbors.getNeighbors(id, limit)) {
+            Book book = getBookById(neighborId);
+            if (book != null)
+                result.add(book);
+        }
+        return result;
+    }
 
     public Book getNeighborBookByJaccard(int id){
         int id2 = jaccardMapNeighbor.get(id);
         return getBookById(id2);
     }
 
-    private HashSet<String> getWordsByRegEx(HashSet<String> words, String regEx){
-        RegExTree ret;
-        DFAState root;
-        Set<DFAState> acceptings;
-        if (regEx.length() < 1) {
-            System.err.println("  >> ERROR: empty regEx.");
-            return new HashSet<>();
-        } else {
-            try {
-                ret = parse(regEx);
-            } catch (Exception e) {
-                log.info("Error parsing RegEx: " + regEx);
-                e.printStackTrace();
-                return new HashSet<>();
-            }
+    /**
+     * get the books of a posting list, in the order of their ids
+     * @param postings a posting list, or null
+     * @return a list of books
+     */
+    private List<Book> getBooksByPostings(Postings postings){
+        if (postings == null)
+            return new ArrayList<>();
+        List<Book> list = new ArrayList<>();
+        for (int i = 0; i < postings.size(); i++) {
+            Book book = getBookById(postings.getId(i));
+            list.add(book);
         }
+        return list.stream().filter(Objects::nonNull).collect(Collectors.toList());
+    }
 
-        NFA nfa = NFA.fromRegExTreeToNFA(ret);
-        DFA dfa = DFA.fromNFAtoDFA(nfa);
-        root = dfa.getRoot();
-        acceptings = dfa.getAcceptings();
+    /**
+     * intersect the posting lists of some terms, then get the books in the order of the posting list of the first term.
+     * Only the ids are intersected, the books are looked up for the result only.
+     * @param index an index table
+     * @param terms the terms, the ones absent from the index or without any book are ignored
+     * @param limit the maximal number of books
+     * @return a list of books
+     */
+    private List<Book> getBooksByAllTerms(PostingIndex index, String[] terms, int limit){
+        List<Postings> postingsList = new ArrayList<>();
+        int firstTermId = -1;
+        for (String term: terms) {
+            int termId = index.getTermId(term.toLowerCase(Locale.ROOT));
+            if (termId < 0)
+                continue;
+            Postings postings = index.getPostings(termId);
+            if (postings.size() == 0)
+                continue;
+            if (firstTermId < 0)
+                firstTermId = termId;
+            postingsList.add(postings);
+        }
+        if (postingsList.isEmpty())
+            return new ArrayList<>();
 
-        HashSet<String> result = new HashSet<>();
-        for (String word: words){
-            if (search(root, root, acceptings, word, 0)){
-                result.add(word);
+        int[] ids;
+        if (postingsList.size() == 1) {
+            ids = index.getIdsByRelevance(firstTermId, limit);
+        } else {
+            List<int[]> idLists = new ArrayList<>();
+            for (Postings postings: postingsList) {
+                idLists.add(postings.getIds());
             }
+            ids = postingsList.get(0).sortByRelevance(PostingsIntersection.intersect(idLists));
         }
-        return result;
+        List<Book> list = new ArrayList<>();
+        for (int i = 0; i < ids.length && list.size() < limit; i++) {
+            Book book = getBookById(ids[i]);
+            if (book != null)
+                list.add(book);
+        }
+        return list;
     }
 
-    private boolean search(DFAState root, DFAState state, Set<DFAState> acceptings, String line, int position) {
-        if (acceptings.contains(state))
-            return true;
-
-        if (position >= line.length())
-            return false;
-
-        int input = line.charAt(position);
-
-        DFAState next = state.getTransition(input);
-
-        if (next == null)
-            return search(root, root, acceptings, line, position + 1);
-
-        if (!search(root, next, acceptings, line, position + 1))
-            return search(root, root, acceptings, line, position + 1);
-
-        return true;
+    /**
+     * @return the ids of the terms of an index matching the regex
+     */
+    private int[] getTermsByRegEx(PostingIndex index, String regEx){
+        int[] termIds;
+        if (regEx.length() < 1) {
+            log.warn("Empty RegEx");
+            return new int[0];
+        } else {
+            try {
+                termIds = regExCache.getTermIds(index, regEx);
+            } catch (Exception e) {
+                log.info("Error parsing RegEx: " + regEx + " (" + e.getMessage() + ")");
+                return new int[0];
+            }
+        }
+        log.debug("RegEx cache: " + regExCache.size() + " tables, " + regExCache.getStats()
+                + ", " + regExCache.termsSize() + " term lists, " + regExCache.getTermStats());
+        return termIds;
     }
 
     private List<Book> unionAndRemoveDuplicates(List<List<Book>> lists){
@@ -39,6 +39,16 @@ public class SnowballProgram implements Serializable {
 	init();
     }
 
+    /**
+     * Set the current string to a region of a char array, without creating a String.
+     */
+    public void setCurrent(char[] value, int start, int length)
+    {
+	current.setLength(0);
+	current.append(value, start, length);
+	init();
+    }
+
     /**
      * Get the current string.
      */
@@ -47,6 +57,19 @@ public class SnowballProgram implements Serializable {
         return current.toString();
     }
 
+    /**
+     * Copy the current string into a char array, without creating a String.
+     * Nothing is copied when the array has less than length chars from start.
+     * @return the length of the current string
+     */
+    public int getCurrent(char[] value, int start)
+    {
+	int length = current.length();
+	if (length <= value.length - start)
+	    current.getChars(0, length, value, start);
+	return length;
+    }
+
     // current string
     protected StringBuilder current;
 
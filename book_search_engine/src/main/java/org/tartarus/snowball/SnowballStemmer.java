@@ -4,5 +4,18 @@ package org.tartarus.snowball;
 public abstract class SnowballStemmer extends SnowballProgram {
     public abstract boolean stem();
 
+    /**
+     * Stem a region of a char array into another one, without creating a String.
+     * Nothing is copied when the stem is longer than the room of the
+     * output array, getCurrent(char[], int) then copies it into a larger one.
+     * @return the length of the stem
+     */
+    public int stem(char[] word, int start, int length, char[] stem, int stemStart)
+    {
+	setCurrent(word, start, length);
+	stem();
+	return getCurrent(stem, stemStart);
+    }
+
     static final long serialVersionUID = 2016072500L;
 };
@@ -0,0 +1,152 @@
+package com.sorbonne.book_search_engine.algorithms.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * An index table read back from its file, in memory or mapped, is the one written,
+ * and a corrupted file is always an IOException, so the index gets rebuilt.
+ */
+class IndexFileTest {
+    @TempDir
+    File dir;
+
+    @Test
+    void testWeightedRoundTrip() throws IOException {
+        SortedMap<String, Postings> index = weightedIndex(new Random(1), 200);
+        SortedMap<String, String> aliases = new TreeMap<>();
+        for (String term: index.keySet()) {
+            aliases.put(term + "s", term);
+            aliases.put(term + "ing", term);
+        }
+        File file = new File(dir, "keywords.idx");
+        IndexFile.write(file, index, aliases);
+
+        IndexFile read = IndexFile.read(file);
+        assertArrayEquals(index.keySet().toArray(new String[0]), read.getTerms());
+        assertArrayEquals(aliases.keySet().toArray(new String[0]), read.getAliases());
+        for (int i = 0; i < read.getAliases().length; i++) {
+            assertEquals(aliases.get(read.getAliases()[i]), read.getTerms()[read.getAliasTargets()[i]]);
+        }
+        int t = 0;
+        for (Postings expected: index.values()) {
+            Postings actual = read.getPostings()[t++];
+            assertArrayEquals(expected.getIds(), actual.getIds());
+            float max = 0;
+            for (int i = 0; i < expected.size(); i++) {
+                max = Math.max(max, expected.getRelevance(i));
+            }
+            for (int i = 0; i < expected.size(); i++) {
+                // quantized on 16 bits of the maximal relevance
+                assertEquals(expected.getRelevance(i), actual.getRelevance(i), max / 65535);
+            }
+        }
+
+        // the terms of an index with aliases are the aliases
+        MappedPostingIndex mapped = MappedPostingIndex.open(file);
+        HeapPostingIndex heap = new HeapPostingIndex(read);
+        assertEquals(aliases.size(), mapped.size());
+        for (int termId = 0; termId < mapped.size(); termId++) {
+            assertEquals(heap.getTerm(termId), mapped.getTerm(termId));
+            assertArrayEquals(heap.getPostings(termId).getIds(), mapped.getPostings(termId).getIds());
+            assertArrayEquals(heap.getIdsByRelevance(termId, 3), mapped.getIdsByRelevance(termId, 3));
+            assertArrayEquals(heap.getIdsByRelevance(termId, Integer.MAX_VALUE),
+                    mapped.getIdsByRelevance(termId, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    void testUnweightedRoundTrip() throws IOException {
+        SortedMap<String, Postings> index = new TreeMap<>();
+        index.put("austen", new Postings(new int[] {158, 1342}, null));
+        index.put("été", new Postings(new int[] {7}, null));
+        index.put("mary", new Postings(new int[] {84, 1000000}, null));
+        File file = new File(dir, "authors.idx");
+        IndexFile.write(file, index, null);
+
+        IndexFile read = IndexFile.read(file);
+        assertArrayEquals(new String[] {"austen", "mary", "été"}, read.getTerms());
+        assertEquals(0, read.getAliases().length);
+        assertArrayEquals(new int[] {84, 1000000}, read.getPostings()[1].getIds());
+        assertFalse(read.getPostings()[1].isWeighted());
+        assertArrayEquals(new int[] {7}, MappedPostingIndex.open(file).getPostings("été").getIds());
+    }
+
+    @Test
+    void testCorruptedFiles() throws IOException {
+        File file = new File(dir, "keywords.idx");
+        IndexFile.write(file, weightedIndex(new Random(2), 50), null);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        int postingBlockStart = IndexFile.HEADER_SIZE + ByteBuffer.wrap(bytes).getInt(16) + ByteBuffer.wrap(bytes).getInt(20);
+
+        // any bit of the header or of the dictionary, but the CRC of the postings, which a mapped index doesn't check
+        for (int position = 0; position < postingBlockStart; position++) {
+            for (int bit = 0; bit < 8; bit++) {
+                byte[] corrupted = bytes.clone();
+                corrupted[position] ^= 1 << bit;
+                assertUnreadable(file, corrupted, position < IndexFile.HEADER_SIZE - 4 || position >= IndexFile.HEADER_SIZE);
+            }
+        }
+        // the posting block is checked when the file is read in memory
+        Random random = new Random(3);
+        for (int n = 0; n < 200; n++) {
+            byte[] corrupted = bytes.clone();
+            corrupted[postingBlockStart + random.nextInt(bytes.length - postingBlockStart)] ^= 1 << random.nextInt(8);
+            assertUnreadable(file, corrupted, false);
+        }
+        // counts and lengths out of their bounds, whatever the CRC
+        for (int field: new int[] {8, 12, 16, 20}) {
+            for (int value: new int[] {-1, Integer.MIN_VALUE, Integer.MAX_VALUE, bytes.length}) {
+                byte[] corrupted = bytes.clone();
+                ByteBuffer.wrap(corrupted).putInt(field, value);
+                assertUnreadable(file, corrupted, true);
+            }
+        }
+        byte[] corrupted = bytes.clone();
+        ByteBuffer.wrap(corrupted).putLong(24, -1);
+        assertUnreadable(file, corrupted, true);
+        for (int length: new int[] {0, 3, IndexFile.HEADER_SIZE, postingBlockStart, bytes.length - 1}) {
+            assertUnreadable(file, Arrays.copyOf(bytes, length), true);
+        }
+        assertUnreadable(file, Arrays.copyOf(bytes, bytes.length + 1), true);
+
+        Files.write(file.toPath(), bytes);
+        assertEquals(50, IndexFile.read(file).getTerms().length);
+    }
+
+    private static void assertUnreadable(File file, byte[] bytes, boolean mapped) throws IOException {
+        Files.write(file.toPath(), bytes);
+        assertThrows(IOException.class, () -> IndexFile.read(file));
+        if (mapped)
+            assertThrows(IOException.class, () -> MappedPostingIndex.open(file));
+    }
+
+    private static SortedMap<String, Postings> weightedIndex(Random random, int terms) {
+        SortedMap<String, Postings> index = new TreeMap<>();
+        while (index.size() < terms) {
+            StringBuilder term = new StringBuilder();
+            for (int i = 0; i < 2 + random.nextInt(8); i++) {
+                term.append((char) ('a' + random.nextInt(6)));
+            }
+            int[] ids = random.ints(1 + random.nextInt(40), 1, 70000).sorted().distinct().toArray();
+            float[] relevances = new float[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                // some ties between the books
+                relevances[i] = random.nextInt(4) == 0 ? 0.25f : random.nextFloat();
+            }
+            index.put(term.toString(), new Postings(ids, relevances));
+        }
+        return index;
+    }
+}
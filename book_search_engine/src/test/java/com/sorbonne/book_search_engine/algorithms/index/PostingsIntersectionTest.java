@@ -0,0 +1,49 @@
+package com.sorbonne.book_search_engine.algorithms.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The galloping intersection must find the ids of a naive intersection, whatever the sizes of the lists.
+ */
+class PostingsIntersectionTest {
+
+    @Test
+    void testIntersectLikeNaive() {
+        Random random = new Random(10);
+        for (int round = 0; round < 500; round++) {
+            int universe = 1 + random.nextInt(2000);
+            List<int[]> lists = new ArrayList<>();
+            int count = 1 + random.nextInt(4);
+            for (int l = 0; l < count; l++) {
+                // lists from empty to dense, so the gallop runs off the end or stops at once
+                double density = random.nextDouble();
+                lists.add(random.ints(0, universe).filter(id -> random.nextDouble() < density)
+                        .limit(random.nextInt(universe + 1)).distinct().sorted().toArray());
+            }
+            assertArrayEquals(naive(lists), PostingsIntersection.intersect(lists), "round " + round);
+        }
+    }
+
+    @Test
+    void testEdges() {
+        int[] all = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        assertArrayEquals(new int[0], PostingsIntersection.intersect(Arrays.asList(all, new int[0])));
+        assertArrayEquals(new int[] {9}, PostingsIntersection.intersect(Arrays.asList(all, new int[] {9, 12})));
+        assertArrayEquals(new int[] {0}, PostingsIntersection.intersect(Arrays.asList(new int[] {-3, 0}, all)));
+        assertArrayEquals(all, PostingsIntersection.intersect(Arrays.asList(all, all.clone())));
+        assertArrayEquals(new int[] {3, 5}, PostingsIntersection.intersect(Arrays.asList(new int[] {3, 5})));
+    }
+
+    private static int[] naive(List<int[]> lists) {
+        return Arrays.stream(lists.get(0))
+                .filter(id -> lists.stream().allMatch(list -> Arrays.stream(list).anyMatch(other -> other == id)))
+                .toArray();
+    }
+}
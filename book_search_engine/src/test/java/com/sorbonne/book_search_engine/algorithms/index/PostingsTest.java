@@ -0,0 +1,85 @@
+package com.sorbonne.book_search_engine.algorithms.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The order of a posting list by relevance must be the one of a full sort of its books
+ * by decreasing relevance, ties in ascending order of ids.
+ */
+class PostingsTest {
+
+    @Test
+    void testIdsByRelevance() {
+        Random random = new Random(5);
+        for (int round = 0; round < 50; round++) {
+            int[] ids = randomIds(random, random.nextInt(200));
+            // few distinct relevances, so there are ties
+            float[] relevances = new float[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                relevances[i] = random.nextInt(10) / 4f;
+            }
+            int[] expected = sortBySort(ids, relevances, ids);
+            Postings postings = new Postings(ids, relevances);
+            assertArrayEquals(expected, postings.getIdsByRelevance(ids.length));
+            assertArrayEquals(Arrays.copyOf(expected, Math.min(10, ids.length)), postings.getIdsByRelevance(10));
+            assertArrayEquals(expected, postings.getIdsByRelevance(Integer.MAX_VALUE));
+
+            // an order given by the index file is used as is
+            Postings stored = new Postings(ids, relevances, Postings.relevanceOrder(relevances));
+            assertArrayEquals(expected, stored.getIdsByRelevance(ids.length));
+        }
+    }
+
+    @Test
+    void testSortByRelevance() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            int[] ids = randomIds(random, 1 + random.nextInt(200));
+            float[] relevances = new float[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                relevances[i] = random.nextInt(10) / 4f;
+            }
+            int[] subset = Arrays.stream(ids).filter(id -> random.nextBoolean()).toArray();
+            assertArrayEquals(sortBySort(ids, relevances, subset), new Postings(ids, relevances).sortByRelevance(subset));
+        }
+    }
+
+    @Test
+    void testUnweighted() {
+        int[] ids = {2, 5, 9, 14};
+        Postings postings = new Postings(ids, null);
+        assertFalse(postings.isWeighted());
+        assertArrayEquals(new int[] {2, 5, 9}, postings.getIdsByRelevance(3));
+        assertArrayEquals(new int[] {5, 14}, postings.sortByRelevance(new int[] {5, 14}));
+        assertEquals(0, postings.getRelevance(1));
+        assertEquals(2, postings.indexOf(9));
+        assertTrue(postings.indexOf(10) < 0);
+    }
+
+    /**
+     * the books of the subset sorted by a comparator on their relevances
+     */
+    private static int[] sortBySort(int[] ids, float[] relevances, int[] subset) {
+        List<Integer> positions = new ArrayList<>();
+        for (int id: subset) {
+            positions.add(Arrays.binarySearch(ids, id));
+        }
+        positions.sort(Comparator.comparingDouble((Integer p) -> -relevances[p]).thenComparingInt(p -> ids[p]));
+        return positions.stream().mapToInt(p -> ids[p]).toArray();
+    }
+
+    /**
+     * @return count distinct ids in ascending order
+     */
+    static int[] randomIds(Random random, int count) {
+        return random.ints(0, 4 * count + 1).distinct().limit(count).sorted().toArray();
+    }
+}
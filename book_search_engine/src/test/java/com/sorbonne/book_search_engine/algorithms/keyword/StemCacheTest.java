@@ -0,0 +1,84 @@
+package com.sorbonne.book_search_engine.algorithms.keyword;
+
+import org.junit.jupiter.api.Test;
+import org.tartarus.snowball.SnowballStemmer;
+import org.tartarus.snowball.ext.englishStemmer;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A word sharing its slot, or its hash, with another one must get its own stem.
+ */
+class StemCacheTest {
+    private static final String[] WORDS = {"running", "runs", "ran", "cats", "caresses", "ponies", "generously",
+            "relational", "hopeful", "conditional", "books", "booking", "sing", "singing", "the"};
+
+    @Test
+    void testSlotCollisions() {
+        // a single slot: each word replaces the previous one
+        StemCache cache = new StemCache(1);
+        SnowballStemmer stemmer = new englishStemmer();
+        Random random = new Random(23);
+        for (int i = 0; i < 1000; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            assertEquals(stem(word), stem(cache, "  " + word + "s", 2, word.length(), stemmer), word);
+        }
+        assertEquals(1000, cache.getHits() + cache.getMisses());
+    }
+
+    @Test
+    void testHashCollisions() {
+        // "Aa" and "BB" have the same hash, so the words of the same length fall in the same slot
+        StemCache cache = new StemCache(1 << 10);
+        SnowballStemmer stemmer = new englishStemmer();
+        String[] words = {"xaaing", "xbBing", "xaaed", "xbBed"};
+        for (int round = 0; round < 3; round++) {
+            for (String word: words) {
+                assertEquals(stem(word), stem(cache, word, 0, word.length(), stemmer), word);
+            }
+        }
+        assertEquals("xaaing".hashCode(), "xbBing".hashCode());
+        assertEquals(12, cache.getMisses());
+    }
+
+    @Test
+    void testHits() {
+        StemCache cache = new StemCache(StemCache.DEFAULT_CAPACITY);
+        SnowballStemmer stemmer = new englishStemmer();
+        for (int round = 0; round < 4; round++) {
+            for (String word: WORDS) {
+                assertEquals(stem(word), stem(cache, word, 0, word.length(), stemmer), word);
+            }
+        }
+        assertEquals(WORDS.length, cache.getMisses());
+        assertEquals(3 * WORDS.length, cache.getHits());
+        assertEquals(0.75, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void testSharedByThreads() {
+        StemCache cache = new StemCache(4);
+        IntStream.range(0, 8).parallel().forEach(thread -> {
+            SnowballStemmer stemmer = new englishStemmer();
+            Random random = new Random(thread);
+            for (int i = 0; i < 20_000; i++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                assertEquals(stem(word), stem(cache, word, 0, word.length(), stemmer), word);
+            }
+        });
+    }
+
+    private static String stem(StemCache cache, String text, int start, int length, SnowballStemmer stemmer) {
+        return cache.stem(text.toCharArray(), start, length, stemmer);
+    }
+
+    private static String stem(String word) {
+        SnowballStemmer stemmer = new englishStemmer();
+        stemmer.setCurrent(word);
+        stemmer.stem();
+        return stemmer.getCurrent();
+    }
+}
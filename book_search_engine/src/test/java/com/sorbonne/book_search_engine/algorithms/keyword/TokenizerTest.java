@@ -0,0 +1,177 @@
+package com.sorbonne.book_search_engine.algorithms.keyword;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The words given by the tokenizer must be the ones of a split of the whole text, wherever the blocks end:
+ * a word over the end of a block, a word longer than a block, a text read a few chars at a time,
+ * or decoded from UTF-8 with its multibyte chars cut at the end of a block.
+ */
+class TokenizerTest {
+    // larger than the block of the tokenizer, so the text is read in several blocks
+    private static final int TEXT_LENGTH = 3 << 16;
+    private static final String[] WORDS = {"the", "Book", "été", "Œuvre", "naïve", "中文", "नमस्ते", "x"};
+    private static final String[] SEPARATORS = {" ", ", ", ". ", "\n", "'", "🙂", " 1 ", "..."};
+
+    @Test
+    void testSplitLikeTheWholeText() throws IOException {
+        Random random = new Random(21);
+        String text = randomText(random);
+        List<String> expected = split(text);
+        assertEquals(expected, tokenize(new StringReader(text)));
+        // a reader giving a few chars at a time, so a word is read over many calls
+        assertEquals(expected, tokenize(new ChunkedReader(text, random)));
+    }
+
+    @Test
+    void testUtf8LikeTheWholeText() {
+        Random random = new Random(22);
+        for (int round = 0; round < 8; round++) {
+            // the words of 2, 3 bytes and the surrogate pairs of 4 bytes end up cut at different block ends
+            String text = randomText(random);
+            List<String> expected = split(text);
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            assertEquals(expected, tokenize(ByteBuffer.wrap(utf8)));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(utf8.length + 10);
+            direct.put(new byte[] {'.', ' ', 'a', 'b', ' '}).put(utf8).put(new byte[5]);
+            ((Buffer) direct).position(5);
+            ((Buffer) direct).limit(5 + utf8.length);
+            assertEquals(expected, tokenize(direct));
+            assertEquals(5, direct.position());
+            assertEquals(5 + utf8.length, direct.limit());
+        }
+        // the first block of 1 << 16 chars ends at each char of the multibyte words
+        for (int shift = 1; shift <= 12; shift++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < (1 << 16) - shift; i++) {
+                sb.append(' ');
+            }
+            String text = sb.append("été 中文🙂नमस्ते ").toString();
+            assertEquals(Arrays.asList("été", "中文", "नमस्ते"),
+                    tokenize(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8))), "shift " + shift);
+        }
+    }
+
+    @Test
+    void testMalformedUtf8() {
+        byte[] utf8 = {'a', 'b', ' ', (byte) 0xC3, ' ', 'c', (byte) 0xE4, (byte) 0xB8, 'd', ' ', (byte) 0xC3, (byte) 0xA9, ' '};
+        // a malformed sequence is replaced by U+FFFD, which is not a letter
+        assertEquals(Arrays.asList("ab", "c", "d", "é"), tokenize(ByteBuffer.wrap(utf8)));
+    }
+
+    @Test
+    void testWordLongerThanTheBlock() throws IOException {
+        StringBuilder sb = new StringBuilder("first ");
+        for (int i = 0; i < TEXT_LENGTH; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String word = sb.substring(6);
+        String text = sb.append(" last.").toString();
+        assertEquals(Arrays.asList("first", word, "last"), tokenize(new StringReader(text)));
+        assertEquals(Arrays.asList("first", word, "last"),
+                tokenize(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void testNames() throws IOException {
+        List<String> words = new ArrayList<>();
+        List<Boolean> stems = new ArrayList<>();
+        new Tokenizer(Tokenizer::isLetterOrMark).tokenize(new StringReader("The Cat met Alice. Then bob ran "),
+                (chars, start, length, stem) -> {
+                    words.add(new String(chars, start, length));
+                    stems.add(stem);
+                });
+        assertEquals(Arrays.asList("the", "cat", "met", "alice", "then", "bob", "ran"), words);
+        assertEquals(Arrays.asList(true, false, true, false, true, true, true), stems);
+    }
+
+    static String randomText(Random random) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < TEXT_LENGTH) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * the words of the whole text in lower case, with whether they may be stemmed, without the last one
+     * if nothing follows it
+     */
+    static List<String> split(String text) {
+        List<String> words = new ArrayList<>();
+        boolean isNewSentence = true;
+        int start = 0;
+        boolean stem = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Tokenizer.isLetterOrMark(Character.toLowerCase(c))) {
+                if (!isNewSentence && Character.isUpperCase(c))
+                    stem = false;
+                isNewSentence = false;
+            } else {
+                if (i > start)
+                    words.add(text.substring(start, i).toLowerCase() + (stem ? "" : "/name"));
+                if (c == '.')
+                    isNewSentence = true;
+                stem = true;
+                start = i + 1;
+            }
+        }
+        return words;
+    }
+
+    static List<String> tokenize(Reader text) throws IOException {
+        List<String> words = new ArrayList<>();
+        new Tokenizer(Tokenizer::isLetterOrMark).tokenize(text, handler(words));
+        return words;
+    }
+
+    static List<String> tokenize(ByteBuffer utf8) {
+        List<String> words = new ArrayList<>();
+        new Tokenizer(Tokenizer::isLetterOrMark).tokenize(utf8, handler(words));
+        return words;
+    }
+
+    static Tokenizer.Handler handler(List<String> words) {
+        return (chars, start, length, stem) -> words.add(new String(chars, start, length) + (stem ? "" : "/name"));
+    }
+
+    private static class ChunkedReader extends Reader {
+        private final String text;
+        private final Random random;
+        private int position;
+
+        private ChunkedReader(String text, Random random) {
+            this.text = text;
+            this.random = random;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == text.length())
+                return -1;
+            int n = Math.min(Math.min(length, 1 + random.nextInt(7)), text.length() - position);
+            text.getChars(position, position + n, buffer, offset);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
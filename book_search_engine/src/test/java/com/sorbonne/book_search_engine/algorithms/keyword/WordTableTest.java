@@ -0,0 +1,75 @@
+package com.sorbonne.book_search_engine.algorithms.keyword;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The table must tell apart the words of the same hash, and of the same slot, through its growths.
+ */
+class WordTableTest {
+
+    @Test
+    void testCollisions() {
+        WordTable table = new WordTable();
+        // "Aa" and "BB" have the same hash, as any concatenation of them
+        List<String> words = new ArrayList<>();
+        for (int w = 0; w < 1 << 10; w++) {
+            StringBuilder sb = new StringBuilder();
+            for (int b = 0; b < 10; b++) {
+                sb.append((w >> b & 1) == 0 ? "Aa" : "BB");
+            }
+            words.add(sb.toString());
+        }
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(-1, find(table, words.get(i)));
+            assertEquals(i, add(table, words.get(i)));
+        }
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(i, add(table, words.get(i)));
+            assertEquals(i, find(table, words.get(i)));
+            assertEquals(words.get(i), table.getWord(i));
+        }
+        assertEquals(words.size(), table.size());
+        assertEquals(-1, find(table, "AaAa"));
+    }
+
+    @Test
+    void testLikeAMap() {
+        Random random = new Random(21);
+        WordTable table = new WordTable();
+        for (int round = 0; round < 3; round++) {
+            Map<String, Integer> ids = new HashMap<>();
+            for (int i = 0; i < 20_000; i++) {
+                String word = Integer.toString(random.nextInt(10_000), 36);
+                int id = add(table, "  " + word + " ", 2, word.length());
+                assertEquals(ids.computeIfAbsent(word, w -> ids.size()), id, word);
+                assertEquals(word, table.getWord(id));
+            }
+            assertEquals(ids.size(), table.size());
+            table.clear();
+            assertEquals(0, table.size());
+            assertEquals(-1, find(table, ids.keySet().iterator().next()));
+        }
+        assertEquals(0, add(table, ""));
+        assertEquals(0, find(table, ""));
+    }
+
+    private static int add(WordTable table, String word) {
+        return add(table, word, 0, word.length());
+    }
+
+    private static int add(WordTable table, String text, int start, int length) {
+        return table.add(text.toCharArray(), start, length);
+    }
+
+    private static int find(WordTable table, String word) {
+        return table.find(word.toCharArray(), 0, word.length());
+    }
+}
@@ -0,0 +1,153 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The scan of the texts, with its prefilter on the required literal and its decoding by blocks, must find
+ * the books of a brute-force match of each whole text in lower case.
+ */
+class BookTextScannerTest {
+    // İ (U+0130) and the Kelvin sign (U+212A) are in lower case 'i' and 'k', é has 2 bytes, 中 3
+    private static final String ALPHABET = "abikABIK İKé中.";
+    private static final String[] PATTERNS = {"kab", "ik", "a.*ik", "(bi|ka)k", "éa", "中a", "ababab", "k(a|b)*i",
+            "abikabik", "zzz", "..i"};
+
+    @TempDir
+    File directory;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void startExecutor() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterEach
+    void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testFindLikeBruteForce() throws Exception {
+        Random random = new Random(20);
+        List<String> texts = new ArrayList<>();
+        for (int id = 0; id < 40; id++) {
+            // a few texts over several blocks, so a match can cross the end of a block
+            int length = id % 8 == 0 ? 100_000 + random.nextInt(100_000) : random.nextInt(300);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            texts.add(sb.toString());
+            Files.write(new File(directory, id + ".txt").toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        // the book 40 has no text, it is skipped
+        int[] bookIds = {40, 3, 0, 17, 5, 8, 1, 2, 4, 6, 7, 9, 10, 11, 12, 13, 14, 15, 16, 18, 19, 20, 21, 22, 23, 24,
+                25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39};
+        BookTextScanner scanner = new BookTextScanner(directory, executor, 3, 8);
+
+        for (String pattern: PATTERNS) {
+            RegExTree ret = RegEx.parse(pattern);
+            RegExMatcher matcher = RegExCompiler.compile(ret);
+            String literal = RequiredLiteral.of(ret);
+            List<Integer> expected = new ArrayList<>();
+            for (int id: bookIds) {
+                if (id < texts.size() && matcher.find(lowerCase(texts.get(id))))
+                    expected.add(id);
+            }
+            for (int limit: new int[] {1, 5, bookIds.length}) {
+                int[] found = scanner.find(bookIds, matcher, literal, limit).get();
+                assertArrayEquals(expected.stream().limit(limit).mapToInt(Integer::intValue).toArray(), found,
+                        pattern + " limit " + limit);
+            }
+            // without the literal, the prefilter doesn't reject anything
+            assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(),
+                    scanner.find(bookIds, matcher, "", bookIds.length).get(), pattern);
+        }
+    }
+
+    @Test
+    void testCaseOfNonAsciiChars() throws Exception {
+        Files.write(new File(directory, "1.txt").toPath(), "PİNK KIT".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(directory, "2.txt").toPath(), "PINK KIT".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(directory, "3.txt").toPath(), "PUNK".getBytes(StandardCharsets.UTF_8));
+        BookTextScanner scanner = new BookTextScanner(directory, executor, 2, 8);
+        for (String pattern: new String[] {"pink", "kit", "pink kit"}) {
+            RegExTree ret = RegEx.parse(pattern);
+            assertArrayEquals(new int[] {1, 2},
+                    scanner.find(new int[] {1, 2, 3}, RegExCompiler.compile(ret), RequiredLiteral.of(ret), 10).get(),
+                    pattern);
+        }
+    }
+
+    @Test
+    void testRequiredLiteralInEveryMatch() {
+        Random random = new Random(20);
+        TreeSet<String> words = new TreeSet<>();
+        while (words.size() < 2000) {
+            words.add(randomString(random, 1 + random.nextInt(10)));
+        }
+        for (int round = 0; round < 1000; round++) {
+            String pattern = randomRegEx(random, 3);
+            RegExTree ret = RegEx.parse(pattern);
+            RegExMatcher matcher = RegExCompiler.compileTable(ret);
+            String literal = RequiredLiteral.of(ret);
+            for (String word: words) {
+                if (matcher.find(word)) {
+                    // the matcher finds a match anywhere in the word, the literal is in the match itself
+                    assertTrue(word.contains(literal), pattern + " requires " + literal + " in " + word);
+                }
+            }
+        }
+        assertEquals("abc", RequiredLiteral.of(RegEx.parse("x*abc.*d")));
+        assertEquals("bcd", RequiredLiteral.of(RegEx.parse("(abcd|bbcd)")));
+        assertEquals("ab", RequiredLiteral.of(RegEx.parse("(abc|abd)")));
+        assertEquals("", RequiredLiteral.of(RegEx.parse("(ab)*")));
+    }
+
+    private static String lowerCase(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static String randomRegEx(Random random, int depth) {
+        if (depth == 0)
+            return random.nextInt(8) == 0 ? "." : randomString(random, 1 + random.nextInt(3));
+        switch (random.nextInt(4)) {
+            case 0:
+                return "(" + randomRegEx(random, depth - 1) + "|" + randomRegEx(random, depth - 1) + ")";
+            case 1:
+                return "(" + randomRegEx(random, depth - 1) + ")*";
+            default:
+                return randomRegEx(random, depth - 1) + randomRegEx(random, depth - 1);
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append("abcd".charAt(random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+}
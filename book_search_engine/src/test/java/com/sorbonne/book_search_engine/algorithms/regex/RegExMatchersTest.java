@@ -0,0 +1,164 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+import com.sorbonne.book_search_engine.algorithms.index.TermTrie;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The matchers a regex can be compiled to (bit-parallel, transition table, lazy DFA with a few or many states)
+ * must find the same terms of a dictionary.
+ */
+class RegExMatchersTest {
+    // 16 x "(a|b)(c|d)": 64 positions
+    private static final String POSITIONS_64 = repeat("(a|b)(c|d)", 16);
+    private static final String POSITIONS_65 = POSITIONS_64 + "e";
+
+    private static final String[] PATTERNS = {
+            "a", "zzz", "t.e", "ka.*x", "(the|al)net", "lo*mi", "(cat|dog)s", "ation",
+            // nullable patterns only match non-empty strings
+            "a*", "(a*)*b", "(a|b*)*b", ".*", "(ab)*",
+            ".", "..", "t.e.a", ".*.*a", "(a|aa)*b", "(a|b)*abb",
+            // chars >= 256 have no transition, even by a dot
+            "œ", "é.*", "x.y",
+            "(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)",
+            POSITIONS_64, POSITIONS_65,
+    };
+
+    private static final String[] TERMS = sortedTerms(
+            "a", "ab", "abb", "aabb", "babb", "abab", "b", "bb", "the", "planet", "alnet", "thenet", "tee", "tie",
+            "tœe", "tea", "teaa", "lomi", "loooomi", "lmi", "kayax", "kax", "cats", "dogs", "cat", "nation", "zz",
+            "zzz", "œuvre", "été", "naïve", "中文", "xœy", "aab", "bab", "aaab", "abbbbbbbb", "aaaaaaaaa",
+            repeat("ac", 16), repeat("bd", 16), repeat("ac", 16) + "e", repeat("bd", 15) + "bde", repeat("ac", 15),
+            "x" + repeat("ad", 16) + "ex", repeat("ac", 15) + "ae");
+
+    @Test
+    void testMatchersFindTheSameTerms() {
+        TermTrie trie = TermTrie.build(TERMS);
+        for (String pattern : PATTERNS) {
+            RegExTree ret = RegEx.parse(pattern);
+            assertNotNull(ret, pattern);
+            Map<String, RegExMatcher> matchers = new LinkedHashMap<>();
+            ShiftAndMatcher shiftAnd = ShiftAndMatcher.of(ret);
+            if (shiftAnd != null)
+                matchers.put("shift-and", shiftAnd);
+            matchers.put("table", RegExCompiler.compileTable(ret));
+            matchers.put("lazy DFA of 1 state", RegExCompiler.compileLazy(ret, 1));
+            matchers.put("lazy DFA of 3 states", RegExCompiler.compileLazy(ret, 3));
+            matchers.put("lazy DFA", RegExCompiler.compileLazy(ret, 100_000));
+
+            int[] expected = findEach(RegExCompiler.compileTable(ret));
+            for (Map.Entry<String, RegExMatcher> matcher : matchers.entrySet()) {
+                String message = pattern + " by the " + matcher.getKey();
+                assertArrayEquals(expected, findEach(matcher.getValue()), message);
+                assertArrayEquals(expected, matcher.getValue().findAll(trie), message);
+                assertArrayEquals(expected, findByCursor(matcher.getValue()), message);
+            }
+        }
+    }
+
+    @Test
+    void testShiftAndPositions() {
+        assertNotNull(ShiftAndMatcher.of(RegEx.parse(POSITIONS_64)));
+        assertNull(ShiftAndMatcher.of(RegEx.parse(POSITIONS_65)));
+        assertTrue(RegExCompiler.compile(RegEx.parse(POSITIONS_64)) instanceof ShiftAndMatcher);
+        assertTrue(RegExCompiler.compile(RegEx.parse(POSITIONS_65)) instanceof DFATable);
+    }
+
+    @Test
+    void testMatches() {
+        assertTerms("a*", "a", "ab", "abb", "aabb", "babb", "abab", "tea", "teaa", "kayax", "kax", "cats", "cat",
+                "nation", "planet", "alnet", "naïve", "aab", "bab", "aaab", "abbbbbbbb", "aaaaaaaaa",
+                repeat("ac", 16), repeat("ac", 16) + "e", repeat("ac", 15), "x" + repeat("ad", 16) + "ex",
+                repeat("ac", 15) + "ae");
+        assertTerms("t.e", "the", "thenet", "tee", "tie");
+        assertTerms("zzz", "zzz");
+        assertTerms("œ");
+        assertTerms(POSITIONS_65, repeat("ac", 16) + "e", repeat("bd", 15) + "bde", "x" + repeat("ad", 16) + "ex");
+        for (String pattern : new String[] {"a*", "(ab)*", ".*", "(a|b*)*b"}) {
+            RegExTree ret = RegEx.parse(pattern);
+            assertFalse(RegExCompiler.compileTable(ret).find(""), pattern);
+            assertFalse(RegExCompiler.compileLazy(ret, 1).find(""), pattern);
+            assertFalse(ShiftAndMatcher.of(ret).find(""), pattern);
+        }
+    }
+
+    @Test
+    void testMinimalDFA() {
+        DFA dfa = RegExCompiler.compileDFA(RegEx.parse("(a|b)*abb"));
+        // 4 states and the sink, which is not kept: the other chars lead to it from every state
+        assertEquals(4, dfa.size());
+        int accepting = 0;
+        for (int s = 0; s < dfa.size(); s++) {
+            assertEquals(-1, dfa.getTransition(s, 0));
+            if (dfa.isAccepting(s))
+                accepting++;
+        }
+        assertEquals(1, accepting);
+        int state = 0;
+        for (char c : "babb".toCharArray()) {
+            state = dfa.getTransition(state, dfa.getClassOf()[c]);
+        }
+        assertTrue(dfa.isAccepting(state));
+
+        // the start state is never accepting
+        assertEquals(2, RegExCompiler.compileDFA(RegEx.parse("a")).size());
+        assertEquals(2, RegExCompiler.compileDFA(RegEx.parse("a*")).size());
+    }
+
+    private static void assertTerms(String pattern, String... terms) {
+        int[] ids = findEach(RegExCompiler.compileTable(RegEx.parse(pattern)));
+        String[] found = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            found[i] = TERMS[ids[i]];
+        }
+        assertArrayEquals(sortedTerms(terms), found, pattern);
+    }
+
+    private static int[] findEach(RegExMatcher matcher) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < TERMS.length; i++) {
+            if (matcher.find(TERMS[i]))
+                ids.add(i);
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * the terms given to a cursor one char at a time
+     */
+    private static int[] findByCursor(RegExMatcher matcher) {
+        RegExMatcher.Cursor cursor = matcher.cursor();
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < TERMS.length; i++) {
+            cursor.reset();
+            char[] chars = TERMS[i].toCharArray();
+            boolean found = false;
+            for (int c = 0; c < chars.length && !found; c++) {
+                found = cursor.find(chars, c, c + 1);
+            }
+            if (found)
+                ids.add(i);
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static String[] sortedTerms(String... terms) {
+        return new TreeSet<>(Arrays.asList(terms)).toArray(new String[0]);
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
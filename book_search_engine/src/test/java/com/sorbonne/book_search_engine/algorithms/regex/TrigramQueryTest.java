@@ -0,0 +1,90 @@
+package com.sorbonne.book_search_engine.algorithms.regex;
+
+import com.sorbonne.book_search_engine.algorithms.index.TrigramIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The candidates of a trigram query must contain every term the regex matches: the query filters terms,
+ * it must never exclude a real match.
+ */
+class TrigramQueryTest {
+    private static final String ALPHABET = "abcd";
+
+    @Test
+    void testCandidatesContainTheMatches() {
+        Random random = new Random(16);
+        TreeSet<String> words = new TreeSet<>();
+        while (words.size() < 2000) {
+            words.add(randomString(random, 1 + random.nextInt(8)));
+        }
+        String[] terms = words.toArray(new String[0]);
+        TrigramIndex index = TrigramIndex.build(terms);
+
+        String[] fixed = {"abc", "abcd", "(abc|bcd)a", "a.cd", "ab*cd", "(ab|cd)(ab|cd)(ab|cd)", "(a|b)(c|d)(a|b)(c|d)a",
+                "abc.*dab", "(abc)*d", "(aaa|b)", "((ab|ba)c)*dd"};
+        for (String pattern: fixed) {
+            assertCandidates(pattern, terms, index);
+        }
+        for (int round = 0; round < 1000; round++) {
+            assertCandidates(randomRegEx(random, 3), terms, index);
+        }
+    }
+
+    @Test
+    void testRequiredTrigrams() {
+        assertTrue(TrigramQuery.of(RegEx.parse("ab")).isAll());
+        assertTrue(TrigramQuery.of(RegEx.parse("a.*b")).isAll());
+        assertTrue(TrigramQuery.of(RegEx.parse("(abc|d)")).isAll());
+        assertFalse(TrigramQuery.of(RegEx.parse("abc")).isAll());
+        assertFalse(TrigramQuery.of(RegEx.parse("x*abc")).isAll());
+
+        String[] terms = {"abc", "abd", "xabcx", "zzz"};
+        TrigramIndex index = TrigramIndex.build(terms);
+        assertArrayEquals(new int[] {0, 2}, TrigramQuery.of(RegEx.parse("abc")).candidates(index));
+        assertArrayEquals(new int[0], TrigramQuery.of(RegEx.parse("abcd")).candidates(index));
+    }
+
+    private static void assertCandidates(String pattern, String[] terms, TrigramIndex index) {
+        RegExTree ret = RegEx.parse(pattern);
+        assertNotNull(ret, pattern);
+        RegExMatcher matcher = RegExCompiler.compileTable(ret);
+        TrigramQuery query = TrigramQuery.of(ret);
+        int[] candidates = query.candidates(index);
+        assertEquals(query.isAll(), candidates == null, pattern);
+        for (int termId = 0; termId < terms.length; termId++) {
+            if (matcher.find(terms[termId]))
+                assertTrue(candidates == null || Arrays.binarySearch(candidates, termId) >= 0,
+                        pattern + " excludes " + terms[termId]);
+        }
+    }
+
+    /**
+     * a random regex of concatenations, alternatives, stars and dots over the alphabet
+     */
+    private static String randomRegEx(Random random, int depth) {
+        if (depth == 0)
+            return random.nextInt(8) == 0 ? "." : randomString(random, 1 + random.nextInt(3));
+        switch (random.nextInt(4)) {
+            case 0:
+                return "(" + randomRegEx(random, depth - 1) + "|" + randomRegEx(random, depth - 1) + ")";
+            case 1:
+                return "(" + randomRegEx(random, depth - 1) + ")*";
+            default:
+                return randomRegEx(random, depth - 1) + randomRegEx(random, depth - 1);
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package com.sorbonne.book_search_engine.algorithms.similarity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Ordering by closeness with a limit must give the first items of a full stable sort by rank.
+ */
+class ClosenessRanksTest {
+
+    @Test
+    void testOrderLikeFullSort() {
+        Random random = new Random(9);
+        for (int round = 0; round < 200; round++) {
+            List<Integer> ranking = random.ints(0, 300).distinct().limit(random.nextInt(200)).boxed()
+                    .collect(Collectors.toList());
+            ClosenessRanks ranks = new ClosenessRanks(ranking);
+            // duplicated books and books without rank
+            List<Integer> books = random.ints(random.nextInt(400), -5, 320).boxed().collect(Collectors.toList());
+            List<Integer> sorted = new ArrayList<>(books);
+            sorted.sort(Comparator.comparingInt(ranks::getRank));
+            for (int limit: new int[] {0, 1, 10, books.size() / 2, books.size(), books.size() + 3}) {
+                assertEquals(sorted.subList(0, Math.min(limit, books.size())),
+                        ranks.order(books, Integer::intValue, limit), "limit " + limit);
+            }
+        }
+    }
+
+    @Test
+    void testSelectSmallest() {
+        Random random = new Random(11);
+        for (int round = 0; round < 500; round++) {
+            // few distinct values, so the partitions have many keys equal to the pivot
+            long[] keys = random.longs(1 + random.nextInt(300), 0, 1 + random.nextInt(20)).toArray();
+            long[] sorted = keys.clone();
+            Arrays.sort(sorted);
+            int k = random.nextInt(keys.length + 1);
+            ClosenessRanks.selectSmallest(keys, k);
+            long[] smallest = Arrays.copyOf(keys, k);
+            Arrays.sort(smallest);
+            assertArrayEquals(Arrays.copyOf(sorted, k), smallest, "k " + k);
+        }
+    }
+
+    @Test
+    void testRanks() {
+        ClosenessRanks ranks = new ClosenessRanks(Arrays.asList(7, 3, 9));
+        assertEquals(0, ranks.getRank(7));
+        assertEquals(2, ranks.getRank(9));
+        assertEquals(-1, ranks.getRank(4));
+        assertEquals(-1, ranks.getRank(10));
+        assertEquals(-1, ranks.getRank(-1));
+    }
+}
@@ -0,0 +1,81 @@
+package com.sorbonne.book_search_engine.algorithms.similarity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The compressed rows built from the candidate pairs must give each book its neighbors in ascending order,
+ * and the distances of a full matrix where the other pairs are at distance 1.
+ */
+class JaccardNeighborGraphTest {
+
+    @Test
+    void testFromPairs() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            int n = 1 + random.nextInt(60);
+            int[] ids = random.ints(0, 10 * n).distinct().limit(n).sorted().toArray();
+            Map<Long, Float> matrix = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    if (random.nextInt(4) == 0)
+                        matrix.put((long) i << 32 | j, random.nextInt(8) / 8f);
+                }
+            }
+            long[] pairs = matrix.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            float[] distances = new float[pairs.length];
+            for (int p = 0; p < pairs.length; p++) {
+                distances[p] = matrix.get(pairs[p]);
+            }
+            JaccardNeighborGraph graph = JaccardNeighborGraph.fromPairs(ids, pairs, distances);
+
+            assertEquals(n, graph.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(i, graph.indexOf(ids[i]));
+                double sum = 0;
+                int neighbors = 0;
+                for (int j = 0; j < n; j++) {
+                    Float expected = i == j ? Float.valueOf(0)
+                            : matrix.get((long) Math.min(i, j) << 32 | Math.max(i, j));
+                    if (i != j && expected != null)
+                        neighbors++;
+                    float distance = expected == null ? 1 : expected;
+                    assertEquals(distance, graph.getDistance(i, j), "distance " + i + ", " + j);
+                    sum += distance;
+                }
+                assertEquals(neighbors, graph.getNeighborCount(i));
+                assertEquals(sum, graph.getDistanceSum(i), 1e-9);
+
+                // the nearest books are among the candidates, by distance then index
+                int row = i;
+                int[] expected = IntStream.range(0, n)
+                        .filter(j -> j != row && matrix.containsKey((long) Math.min(row, j) << 32 | Math.max(row, j)))
+                        .boxed()
+                        .sorted(Comparator.comparingDouble((Integer j) -> graph.getDistance(row, j))
+                                .thenComparingInt(j -> j))
+                        .mapToInt(Integer::intValue).limit(3).toArray();
+                assertArrayEquals(expected, graph.getNearest(i, 3));
+            }
+        }
+    }
+
+    @Test
+    void testRowsAreSorted() {
+        int[] ids = {1, 2, 3, 4};
+        // (0, 3), (1, 2), (1, 3), (2, 3): row 3 gets 0, 1, 2 from the first pass
+        long[] pairs = {3L, 1L << 32 | 2, 1L << 32 | 3, 2L << 32 | 3};
+        float[] distances = {0.5f, 0.25f, 0.75f, 0.125f};
+        JaccardNeighborGraph graph = JaccardNeighborGraph.fromPairs(ids, pairs, distances);
+        assertArrayEquals(new int[] {2, 0, 1}, graph.getNearest(3, 3));
+        assertArrayEquals(new int[] {2, 3}, graph.getNearest(1, 5));
+        assertEquals(0, graph.getNearest(0, 0).length);
+        assertEquals(2 + 0.5, graph.getDistanceSum(0), 1e-9);
+    }
+}
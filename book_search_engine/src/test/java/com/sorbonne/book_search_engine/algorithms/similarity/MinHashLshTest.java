@@ -0,0 +1,35 @@
+package com.sorbonne.book_search_engine.algorithms.similarity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The pairs left out of a bucket too large must be counted.
+ */
+class MinHashLshTest {
+
+    @Test
+    void testTruncatedBuckets() {
+        MinHashLsh lsh = new MinHashLsh(16, 0.5, 0.9);
+        // 300 books of the same signature: one bucket per band
+        int[][] signatures = new int[300][16];
+        long kept = 0;
+        for (int band = 0; band < lsh.getBands(); band++) {
+            long[] pairs = lsh.candidatePairs(signatures, band);
+            assertEquals(pairs.length, Arrays.stream(pairs).distinct().count());
+            kept += pairs.length;
+        }
+        assertEquals(lsh.getBands(), lsh.getTruncatedBuckets());
+        assertEquals(lsh.getBands() * 300L * 299 / 2, kept + lsh.getDroppedPairs());
+        assertTrue(lsh.getDroppedPairs() > 0);
+
+        // small buckets: all their pairs
+        MinHashLsh small = new MinHashLsh(16, 0.5, 0.9);
+        assertEquals(20 * 19 / 2, small.candidatePairs(new int[20][16], 0).length);
+        assertEquals(0, small.getTruncatedBuckets());
+        assertEquals(0, small.getDroppedPairs());
+    }
+}
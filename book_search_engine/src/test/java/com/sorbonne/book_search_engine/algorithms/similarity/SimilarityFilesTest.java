@@ -0,0 +1,142 @@
+package com.sorbonne.book_search_engine.algorithms.similarity;
+
+import com.sorbonne.book_search_engine.algorithms.index.Postings;
+import com.sorbonne.book_search_engine.algorithms.keyword.config.KeywordDictionary;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The distances and the nearest neighbors read back from their {@link ArrayFile} are the ones written,
+ * and a file of another type, truncated or corrupted can't be read.
+ */
+class SimilarityFilesTest {
+    @TempDir
+    File dir;
+
+    @Test
+    void testJaccardMatrix() throws IOException {
+        JaccardMatrix matrix = JaccardMatrix.compute(dictionary(40), 2);
+        File file = new File(dir, "matrix.bin");
+        matrix.write(file);
+        assertSameDistances(matrix, JaccardMatrix.read(file));
+    }
+
+    @Test
+    void testJaccardNeighborGraph() throws IOException {
+        JaccardNeighborGraph graph = JaccardNeighborGraph.compute(dictionary(40), new MinHashLsh(64, 0.3, 0.9), 2);
+        File file = new File(dir, "graph.bin");
+        graph.write(file);
+        assertSameDistances(graph, JaccardNeighborGraph.read(file));
+    }
+
+    @Test
+    void testNearestNeighbors() throws IOException {
+        NearestNeighbors nearest = NearestNeighbors.compute(JaccardMatrix.compute(dictionary(40), 2), 5, 2);
+        File file = new File(dir, "nearest.bin");
+        nearest.write(file);
+        NearestNeighbors read = NearestNeighbors.read(file);
+        assertEquals(5, read.getK());
+        assertArrayEquals(nearest.getIds(), read.getIds());
+        for (int id: nearest.getIds()) {
+            assertArrayEquals(nearest.getNeighbors(id, 5), read.getNeighbors(id, 5));
+            assertArrayEquals(nearest.getDistances(id), read.getDistances(id));
+        }
+    }
+
+    @Test
+    void testLargeArrays() throws IOException {
+        Random random = new Random(1);
+        int[] ints = random.ints(100_003).toArray();
+        double[] doubles = random.doubles(50_001).toArray();
+        File file = new File(dir, "arrays.bin");
+        try (ArrayFile.Writer out = new ArrayFile.Writer(file, "TEST", 3)) {
+            out.writeInt(42);
+            out.writeInts(ints);
+            out.writeDoubles(doubles);
+            out.writeInts(new int[0]);
+        }
+        try (ArrayFile.Reader in = new ArrayFile.Reader(file, "TEST", 3)) {
+            assertEquals(42, in.readInt());
+            assertArrayEquals(ints, in.readInts());
+            assertArrayEquals(doubles, in.readDoubles());
+            assertArrayEquals(new int[0], in.readInts());
+            in.checkEnd();
+        }
+    }
+
+    @Test
+    void testInvalidFiles() throws IOException {
+        File file = new File(dir, "matrix.bin");
+        JaccardMatrix.compute(dictionary(40), 1).write(file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        // another type, another version
+        assertThrows(IOException.class, () -> JaccardNeighborGraph.read(file));
+        assertThrows(IOException.class, () -> new ArrayFile.Reader(file, "JMAT", 2).close());
+
+        // a flipped bit in the distances, caught by the CRC
+        bytes[bytes.length / 2] ^= 4;
+        Files.write(file.toPath(), bytes);
+        assertThrows(IOException.class, () -> JaccardMatrix.read(file));
+        bytes[bytes.length / 2] ^= 4;
+
+        // a truncated file
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+        assertThrows(IOException.class, () -> JaccardMatrix.read(file));
+        Files.write(file.toPath(), Arrays.copyOf(bytes, 10));
+        assertThrows(IOException.class, () -> JaccardMatrix.read(file));
+
+        // a negative or huge number of ids is not allocated
+        for (int length: new int[] {-1, Integer.MAX_VALUE, 1 << 28}) {
+            Files.write(file.toPath(), bytes);
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.seek(12);
+                out.writeInt(length);
+            }
+            assertThrows(IOException.class, () -> JaccardMatrix.read(file));
+        }
+
+        Files.write(file.toPath(), bytes);
+        assertNotNull(JaccardMatrix.read(file));
+    }
+
+    private static void assertSameDistances(BookDistances expected, BookDistances actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getId(i), actual.getId(i));
+            assertEquals(expected.getDistanceSum(i), actual.getDistanceSum(i));
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.getDistance(i, j), actual.getDistance(i, j));
+            }
+        }
+    }
+
+    /**
+     * books of random stems among 30, each stem in at least one book
+     */
+    static KeywordDictionary dictionary(int books) {
+        Random random = new Random(books);
+        int stemCount = 30;
+        String[] stems = new String[stemCount];
+        Postings[] postings = new Postings[stemCount];
+        for (int s = 0; s < stemCount; s++) {
+            stems[s] = String.format("stem%02d", s);
+            int[] ids = random.ints(1 + random.nextInt(books / 2), 1, 3 * books).sorted().distinct().toArray();
+            float[] relevances = new float[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                relevances[i] = random.nextFloat();
+            }
+            postings[s] = new Postings(ids, relevances);
+        }
+        return new KeywordDictionary(new String[0], new int[0], stems, postings);
+    }
+}